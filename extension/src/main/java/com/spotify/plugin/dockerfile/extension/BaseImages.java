@@ -0,0 +1,157 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Extension
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile.extension;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the base images of a Dockerfile, i.e. the images named by its <tt>FROM</tt> instructions.
+ *
+ * <p>The extension pulls the base images of all reactor modules when the session starts, and
+ * publishes a <tt>Map&lt;String, Future&lt;?&gt;&gt;</tt> from base image to its pull under
+ * {@link #WARMED_IMAGES_KEY} in the data of the repository session.  Only JDK types are shared
+ * that way because the extension and the plugin may see different copies of this class.
+ */
+public final class BaseImages {
+
+  public static final String WARMED_IMAGES_KEY = BaseImages.class.getName() + ".warmed";
+
+  private static final Pattern VARIABLE = Pattern.compile("\\$(?:\\{([^}]+)}|(\\w+))");
+
+  private BaseImages() {
+  }
+
+  /**
+   * Returns the distinct base images of a Dockerfile, in normalized form.  Build stages that are
+   * based on earlier stages, <tt>scratch</tt> and images whose name depends on an unknown
+   * build argument are left out.
+   */
+  public static List<String> read(Path dockerfile, Map<String, String> buildArgs)
+      throws IOException {
+    return parse(DockerfileParser.parse(dockerfile), buildArgs);
+  }
+
+  static List<String> parse(List<DockerfileParser.Instruction> instructions,
+                            Map<String, String> buildArgs) {
+    return new ArrayList<>(new LinkedHashSet<>(resolve(instructions, buildArgs).values()));
+  }
+
+  /**
+   * Returns the base image of each <tt>FROM</tt> instruction that names one, in normalized form.
+   * Instructions naming an earlier stage, <tt>scratch</tt> or an image that depends on an unknown
+   * build argument are left out.
+   */
+  public static Map<DockerfileParser.Instruction, String> resolve(
+      List<DockerfileParser.Instruction> instructions, Map<String, String> buildArgs) {
+    final Map<String, String> args = new HashMap<>();
+    final Set<String> stages = new HashSet<>();
+    final Map<DockerfileParser.Instruction, String> images = new LinkedHashMap<>();
+    boolean seenFrom = false;
+
+    for (DockerfileParser.Instruction instruction : instructions) {
+      final List<String> words = instruction.words();
+      if (instruction.is("ARG") && !seenFrom && !words.isEmpty()) {
+        // Only the ARGs before the first FROM can be used in FROM lines
+        final String[] arg = words.get(0).split("=", 2);
+        if (buildArgs != null && buildArgs.get(arg[0]) != null) {
+          args.put(arg[0], buildArgs.get(arg[0]));
+        } else if (arg.length > 1) {
+          args.put(arg[0], unquote(arg[1]));
+        }
+      } else if (instruction.is("FROM")) {
+        seenFrom = true;
+        if (words.isEmpty()) {
+          continue;
+        }
+        final String image = substitute(words.get(0), args);
+        final boolean earlierStage =
+            image != null && stages.contains(image.toLowerCase(Locale.ROOT));
+        if (words.size() >= 3 && "AS".equalsIgnoreCase(words.get(1))) {
+          stages.add(words.get(2).toLowerCase(Locale.ROOT));
+        }
+        if (image != null && !earlierStage && !"scratch".equalsIgnoreCase(image)) {
+          images.put(instruction, normalize(image));
+        }
+      }
+    }
+    return images;
+  }
+
+  /**
+   * Normalizes an image name so that names referring to the same image compare equal; an image
+   * without a tag or digest refers to its <tt>latest</tt> tag.
+   */
+  public static String normalize(String image) {
+    if (image.contains("@")) {
+      return image;
+    }
+    final int slash = image.lastIndexOf('/');
+    if (image.indexOf(':', slash + 1) >= 0) {
+      return image;
+    }
+    return image + ":latest";
+  }
+
+  private static String substitute(String value, Map<String, String> args) {
+    final Matcher matcher = VARIABLE.matcher(value);
+    final StringBuffer result = new StringBuffer();
+    while (matcher.find()) {
+      String name = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+      String fallback = null;
+      final int defaultIndex = name.indexOf(":-");
+      if (defaultIndex >= 0) {
+        fallback = name.substring(defaultIndex + 2);
+        name = name.substring(0, defaultIndex);
+      }
+      String replacement = args.get(name);
+      if (replacement == null || replacement.isEmpty()) {
+        replacement = fallback;
+      }
+      if (replacement == null) {
+        return null;
+      }
+      matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
+    }
+    matcher.appendTail(result);
+    return result.toString();
+  }
+
+  private static String unquote(String value) {
+    if (value.length() >= 2
+        && (value.startsWith("\"") && value.endsWith("\"")
+            || value.startsWith("'") && value.endsWith("'"))) {
+      return value.substring(1, value.length() - 1);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,117 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Extension
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile.extension;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Slots for the builds, pulls and pushes that the goals of the plugin and the pre-pulls of the
+ * extension run against the daemon, shared by the whole session.
+ *
+ * <p>The slots are kept in a <tt>ConcurrentMap&lt;String, Map.Entry&lt;Integer,
+ * Semaphore&gt;&gt;</tt> from operation to its limit and slots under {@link #KEY} in the data of
+ * the repository session.  Only JDK types are shared that way because the extension and the
+ * plugin may see different copies of this class.
+ */
+public final class DaemonSlots {
+
+  public static final String KEY = DaemonSlots.class.getName();
+
+  public static final String BUILD = "build";
+  public static final String PULL = "pull";
+  public static final String PUSH = "push";
+
+  private final ConcurrentMap<String, Map.Entry<Integer, Semaphore>> slots;
+
+  public DaemonSlots() {
+    this(new ConcurrentHashMap<String, Map.Entry<Integer, Semaphore>>());
+  }
+
+  private DaemonSlots(ConcurrentMap<String, Map.Entry<Integer, Semaphore>> slots) {
+    this.slots = slots;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static DaemonSlots forSession(RepositorySystemSession session) {
+    final SessionData data = session.getData();
+    Object shared = data.get(KEY);
+    if (shared == null) {
+      final ConcurrentMap<String, Map.Entry<Integer, Semaphore>> created =
+          new ConcurrentHashMap<>();
+      shared = data.set(KEY, null, created) ? created : data.get(KEY);
+    }
+    if (!(shared instanceof ConcurrentMap)) {
+      return new DaemonSlots();
+    }
+    return new DaemonSlots((ConcurrentMap<String, Map.Entry<Integer, Semaphore>>) shared);
+  }
+
+  /**
+   * Returns the slots of an operation, or null if no limit was set for it.
+   */
+  public Semaphore get(String operation) {
+    final Map.Entry<Integer, Semaphore> entry = slots.get(operation);
+    return entry == null ? null : entry.getValue();
+  }
+
+  /**
+   * Returns the maximum number of concurrent operations, or 0 if no limit was set.
+   */
+  public int limit(String operation) {
+    final Map.Entry<Integer, Semaphore> entry = slots.get(operation);
+    return entry == null ? 0 : entry.getKey();
+  }
+
+  /**
+   * Limits the number of concurrent operations.  If a different limit was set before, the
+   * smallest one applies; lowering the limit waits for operations holding the removed slots to
+   * finish.
+   *
+   * @return the limit that was set before, or 0 if there was none
+   */
+  public int limit(String operation, int limit) {
+    if (limit <= 0) {
+      return limit(operation);
+    }
+    final Map.Entry<Integer, Semaphore> previous;
+    synchronized (slots) {
+      previous = slots.get(operation);
+      if (previous == null) {
+        slots.put(operation,
+            new SimpleImmutableEntry<>(limit, new Semaphore(limit, true)));
+        return 0;
+      }
+      if (limit >= previous.getKey()) {
+        return previous.getKey();
+      }
+      slots.put(operation, new SimpleImmutableEntry<>(limit, previous.getValue()));
+    }
+    // The semaphore is fair, so this is served before operations that start later
+    previous.getValue().acquireUninterruptibly(previous.getKey() - limit);
+    return previous.getKey();
+  }
+}
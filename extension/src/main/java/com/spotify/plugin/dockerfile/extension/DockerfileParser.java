@@ -0,0 +1,246 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile.extension;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A small Dockerfile parser that understands just enough of the syntax (line continuations,
+ * comments, the <tt>escape</tt> parser directive and JSON argument form) to let the plugin
+ * reason about the instructions in a Dockerfile.  Both the extension and the plugin read
+ * Dockerfiles through it, so that they agree on what a Dockerfile contains.
+ */
+public final class DockerfileParser {
+
+  private static final Pattern ESCAPE_DIRECTIVE =
+      Pattern.compile("^#\\s*escape\\s*=\\s*([\\\\`])\\s*$", Pattern.CASE_INSENSITIVE);
+  private static final Pattern INSTRUCTION = Pattern.compile("^\\s*([A-Za-z]+)(?:\\s+(.*))?$");
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private DockerfileParser() {
+  }
+
+  public static final class Instruction {
+
+    private final int line;
+    private final int lastLine;
+    private final String keyword;
+    private final String arguments;
+
+    Instruction(int line, int lastLine, String keyword, String arguments) {
+      this.line = line;
+      this.lastLine = lastLine;
+      this.keyword = keyword;
+      this.arguments = arguments;
+    }
+
+    /**
+     * The (1-based) line in the Dockerfile where this instruction starts.
+     */
+    public int line() {
+      return line;
+    }
+
+    /**
+     * The (1-based) line in the Dockerfile where this instruction ends, after any continuation
+     * lines.
+     */
+    public int lastLine() {
+      return lastLine;
+    }
+
+    /**
+     * The instruction keyword in upper case, for example <tt>COPY</tt>.
+     */
+    public String keyword() {
+      return keyword;
+    }
+
+    /**
+     * The raw argument string, with line continuations joined.
+     */
+    public String arguments() {
+      return arguments;
+    }
+
+    /**
+     * The arguments split into words, honoring the JSON array form, with any leading
+     * <tt>--flag</tt> options removed.
+     */
+    public List<String> words() {
+      final List<String> words = new ArrayList<>();
+      for (String word : allWords()) {
+        if (!words.isEmpty() || !word.startsWith("--")) {
+          words.add(word);
+        }
+      }
+      return words;
+    }
+
+    /**
+     * The value of a leading <tt>--name=value</tt> flag, or null if the flag is absent.
+     */
+    public String flag(String name) {
+      for (String word : allWords()) {
+        if (!word.startsWith("--")) {
+          break;
+        }
+        if (word.startsWith("--" + name + "=")) {
+          return word.substring(name.length() + 3);
+        }
+      }
+      return null;
+    }
+
+    public boolean is(String keyword) {
+      return this.keyword.equals(keyword);
+    }
+
+    private List<String> allWords() {
+      final String trimmed = arguments.trim();
+      final List<String> flags = new ArrayList<>();
+      String rest = trimmed;
+      // Flags always precede the JSON form, e.g. COPY --chown=1:1 ["a", "b"]
+      while (rest.startsWith("--")) {
+        final int end = indexOfWhitespace(rest);
+        if (end < 0) {
+          flags.add(rest);
+          rest = "";
+        } else {
+          flags.add(rest.substring(0, end));
+          rest = rest.substring(end).trim();
+        }
+      }
+      if (rest.startsWith("[")) {
+        try {
+          final String[] json = new Gson().fromJson(rest, String[].class);
+          if (json != null) {
+            flags.addAll(Arrays.asList(json));
+            return flags;
+          }
+        } catch (JsonParseException e) {
+          // Not valid JSON; Docker treats it as shell form, and so do we
+        }
+      }
+      for (String word : WHITESPACE.split(rest)) {
+        if (!word.isEmpty()) {
+          flags.add(word);
+        }
+      }
+      return flags;
+    }
+
+    private static int indexOfWhitespace(String string) {
+      for (int i = 0; i < string.length(); i++) {
+        if (Character.isWhitespace(string.charAt(i))) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    public String toString() {
+      return keyword + " " + arguments;
+    }
+  }
+
+  public static List<Instruction> parse(Path dockerfile) throws IOException {
+    return parse(new String(Files.readAllBytes(dockerfile), StandardCharsets.UTF_8));
+  }
+
+  public static List<Instruction> parse(String content) {
+    final List<Instruction> instructions = new ArrayList<>();
+    final String[] lines = content.split("\r?\n", -1);
+
+    char escape = '\\';
+    boolean directivesAllowed = true;
+
+    StringBuilder current = null;
+    int currentStart = 0;
+    int currentEnd = 0;
+
+    for (int i = 0; i < lines.length; i++) {
+      final String line = lines[i];
+      final String trimmed = line.trim();
+
+      if (current == null && directivesAllowed) {
+        final Matcher escapeMatcher = ESCAPE_DIRECTIVE.matcher(trimmed);
+        if (escapeMatcher.matches()) {
+          escape = escapeMatcher.group(1).charAt(0);
+          continue;
+        }
+      }
+
+      if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+        // Comments and empty lines are removed before continuation lines are joined
+        continue;
+      }
+      directivesAllowed = false;
+
+      final boolean continues = trimmed.charAt(trimmed.length() - 1) == escape;
+      final String body =
+          continues ? trimmed.substring(0, trimmed.length() - 1).trim() : trimmed;
+
+      if (current == null) {
+        current = new StringBuilder();
+        currentStart = i + 1;
+      } else if (body.length() > 0) {
+        current.append(' ');
+      }
+      current.append(body);
+      currentEnd = i + 1;
+
+      if (!continues) {
+        addInstruction(instructions, currentStart, currentEnd, current.toString());
+        current = null;
+      }
+    }
+
+    if (current != null) {
+      addInstruction(instructions, currentStart, currentEnd, current.toString());
+    }
+
+    return Collections.unmodifiableList(instructions);
+  }
+
+  private static void addInstruction(List<Instruction> instructions, int line, int lastLine,
+                                     String text) {
+    final Matcher matcher = INSTRUCTION.matcher(text);
+    if (matcher.matches()) {
+      final String arguments = matcher.group(2) == null ? "" : matcher.group(2).trim();
+      instructions.add(
+          new Instruction(line, lastLine, matcher.group(1).toUpperCase(Locale.ROOT), arguments));
+    }
+  }
+}
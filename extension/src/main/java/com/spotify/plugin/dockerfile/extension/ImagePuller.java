@@ -0,0 +1,149 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Extension
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile.extension;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import java.io.Closeable;
+import java.text.MessageFormat;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.codehaus.plexus.logging.Logger;
+
+/**
+ * Pulls images in the background with bounded concurrency.  Each image is pulled at most once,
+ * taking a pull slot of the session (see {@link DaemonSlots}) if pulls are limited.
+ */
+final class ImagePuller implements Closeable {
+
+  private final DockerClient dockerClient;
+  private final Logger logger;
+  private final DaemonSlots slots;
+  private final ExecutorService executor;
+  private final ConcurrentMap<String, Future<?>> pulls = new ConcurrentHashMap<>();
+
+  ImagePuller(DockerClient dockerClient, Logger logger, int threads, DaemonSlots slots) {
+    this.dockerClient = dockerClient;
+    this.logger = logger;
+    this.slots = slots;
+    this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        final Thread thread =
+            new Thread(runnable, "dockerfile-prepull-" + count.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Runs a task on the puller's threads, e.g. to find out which images to pull.
+   */
+  void submit(Runnable task) {
+    executor.execute(task);
+  }
+
+  /**
+   * Starts pulling an image unless it is already being pulled.
+   *
+   * @param refresh whether to pull the image even if it is present, to get a newer version
+   * @return a future that completes once the image is present
+   */
+  Future<?> pull(final String image, final boolean refresh) {
+    final FutureTask<Void> task = new FutureTask<>(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        // Nobody might ever look at the future, so failures are logged here
+        try {
+          if (refresh || !exists(image)) {
+            pullNow(image);
+          }
+        } catch (InterruptedException e) {
+          logger.debug(MessageFormat.format("Stopped pre-pulling image {0}", image));
+          throw e;
+        } catch (Exception e) {
+          logger.warn(MessageFormat.format("Could not pre-pull image {0}: {1}", image,
+              e.getMessage()), e);
+          throw e;
+        }
+        return null;
+      }
+    });
+
+    final Future<?> existing = pulls.putIfAbsent(image, task);
+    if (existing != null) {
+      return existing;
+    }
+    executor.execute(task);
+    return task;
+  }
+
+  /**
+   * Returns the pulls that were started, by image name.
+   */
+  ConcurrentMap<String, Future<?>> pulls() {
+    return pulls;
+  }
+
+  private boolean exists(String image) throws DockerException, InterruptedException {
+    try {
+      dockerClient.inspectImage(image);
+      logger.debug(MessageFormat.format("Image {0} is already present", image));
+      return true;
+    } catch (ImageNotFoundException e) {
+      return false;
+    }
+  }
+
+  private void pullNow(String image) throws DockerException, InterruptedException {
+    final Semaphore slot = slots.get(DaemonSlots.PULL);
+    if (slot != null) {
+      slot.acquire();
+    }
+    try {
+      logger.info(MessageFormat.format("Pre-pulling image {0}", image));
+      dockerClient.pull(image);
+      logger.info(MessageFormat.format("Pre-pulled image {0}", image));
+    } finally {
+      if (slot != null) {
+        slot.release();
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    dockerClient.close();
+  }
+}
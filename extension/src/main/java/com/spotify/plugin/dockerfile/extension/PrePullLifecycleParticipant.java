@@ -0,0 +1,341 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Extension
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile.extension;
+
+import com.spotify.docker.client.DefaultDockerClient;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.auth.ConfigFileRegistryAuthSupplier;
+import com.spotify.docker.client.exceptions.DockerCertificateException;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.artifact.ArtifactUtils;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+
+/**
+ * Starts pulling the images that the reactor will need as soon as the projects have been read, so
+ * that the pulls overlap with compiling and testing instead of sitting on the critical path of the
+ * modules that need them.
+ *
+ * <p>The images are the base images of the Dockerfiles of all reactor modules, and the ones named
+ * by the <tt>docker-info</tt> dependencies of the reactor's projects.  Each distinct base image is
+ * pulled once, and the pulls are published to the build goals (see {@link BaseImages}) so that
+ * they can skip pulling the same base image again.  Dependencies on other reactor modules are
+ * skipped, since those modules have not built their images yet.
+ */
+public class PrePullLifecycleParticipant extends AbstractMavenLifecycleParticipant {
+
+  static final String ENABLED_PROPERTY = "dockerfile.prepull";
+  static final String THREADS_PROPERTY = "dockerfile.prepull.threads";
+  static final String MAX_CONCURRENT_PULLS_PROPERTY = "dockerfile.maxConcurrentPulls";
+
+  private static final String PLUGIN_KEY = "com.spotify:dockerfile-maven-plugin";
+  private static final String DOCKER_INFO_TYPE = "docker-info";
+  private static final int DEFAULT_THREADS = 4;
+  private static final Pattern IMAGE_NAME_ENTRY =
+      Pattern.compile("META-INF/docker/[^/]+/[^/]+/image-name");
+
+  // Injected by Plexus, see META-INF/plexus/components.xml
+  private RepositorySystem repositorySystem;
+  private Logger logger;
+
+  private ImagePuller puller;
+
+  @Override
+  public void afterProjectsRead(MavenSession session) {
+    session.getRepositorySession().getData()
+        .set(SessionResources.CLOSE_AT_SESSION_END_KEY, new ConcurrentLinkedQueue<Closeable>());
+
+    if (!Boolean.parseBoolean(property(session, ENABLED_PROPERTY))) {
+      return;
+    }
+    if (session.isOffline()) {
+      logger.info("Not pre-pulling images in offline mode");
+      return;
+    }
+
+    final DockerClient dockerClient;
+    try {
+      dockerClient = DefaultDockerClient.fromEnv()
+          .registryAuthSupplier(new ConfigFileRegistryAuthSupplier())
+          .build();
+    } catch (DockerCertificateException e) {
+      logger.warn("Not pre-pulling images; could not load Docker certificates", e);
+      return;
+    }
+
+    final int threads = intProperty(session, THREADS_PROPERTY, DEFAULT_THREADS);
+    // Pre-pulls take the same slots as the pulls of the build goals
+    final DaemonSlots slots = DaemonSlots.forSession(session.getRepositorySession());
+    slots.limit(DaemonSlots.PULL, intProperty(session, MAX_CONCURRENT_PULLS_PROPERTY, 0));
+
+    puller = new ImagePuller(dockerClient, logger, threads, slots);
+    warmUpBaseImages(session, puller);
+    prePullDockerInfoDependencies(session, puller);
+  }
+
+  @Override
+  public void afterSessionEnd(MavenSession session) {
+    if (puller != null) {
+      puller.close();
+      puller = null;
+    }
+
+    final Object resources =
+        session.getRepositorySession().getData().get(SessionResources.CLOSE_AT_SESSION_END_KEY);
+    if (resources instanceof Queue) {
+      for (Object resource : (Queue<?>) resources) {
+        close(resource);
+      }
+      ((Queue<?>) resources).clear();
+    }
+  }
+
+  private void close(Object resource) {
+    if (!(resource instanceof Closeable)) {
+      return;
+    }
+    try {
+      ((Closeable) resource).close();
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Could not close " + resource, e);
+    }
+  }
+
+  private void warmUpBaseImages(MavenSession session, ImagePuller puller) {
+    final Set<String> baseImages = new LinkedHashSet<>();
+    for (MavenProject project : session.getProjects()) {
+      final Plugin plugin = project.getPlugin(PLUGIN_KEY);
+      if (plugin == null) {
+        continue;
+      }
+
+      final Xpp3Dom pluginConfiguration = (Xpp3Dom) plugin.getConfiguration();
+      final List<Xpp3Dom> configurations = new ArrayList<>();
+      configurations.add(pluginConfiguration);
+      for (PluginExecution execution : plugin.getExecutions()) {
+        if (execution.getConfiguration() != null) {
+          // Merge into a copy; the execution's configuration is part of the project model
+          configurations.add(Xpp3Dom.mergeXpp3Dom(
+              new Xpp3Dom((Xpp3Dom) execution.getConfiguration()), pluginConfiguration));
+        }
+      }
+      for (Xpp3Dom configuration : configurations) {
+        final File dockerfile = dockerfile(project, configuration);
+        if (dockerfile == null || "false".equals(value(configuration, "pullNewerImage"))) {
+          continue;
+        }
+        try {
+          baseImages.addAll(BaseImages.read(dockerfile.toPath(), buildArgs(configuration)));
+        } catch (IOException e) {
+          logger.debug(MessageFormat.format("Could not read {0}: {1}", dockerfile,
+              e.getMessage()));
+        }
+      }
+    }
+
+    if (baseImages.isEmpty()) {
+      return;
+    }
+    logger.info(MessageFormat.format("Pre-pulling {0} base image(s) used by the reactor",
+        baseImages.size()));
+    for (String image : baseImages) {
+      // Refresh them, as the builds would have done with pullNewerImage
+      puller.pull(image, true);
+    }
+    session.getRepositorySession().getData().set(BaseImages.WARMED_IMAGES_KEY, puller.pulls());
+  }
+
+  private static File dockerfile(MavenProject project, Xpp3Dom configuration) {
+    final String contextDirectory = value(configuration, "contextDirectory");
+    final File context = contextDirectory == null
+                         ? project.getBasedir() : resolve(project, contextDirectory);
+
+    final String dockerfile = value(configuration, "dockerfile");
+    if (dockerfile != null) {
+      final File file = resolve(project, dockerfile);
+      return file.isFile() ? file : null;
+    }
+    for (String name : new String[] {"Dockerfile", "dockerfile"}) {
+      final File file = new File(context, name);
+      if (file.isFile()) {
+        return file;
+      }
+    }
+    return null;
+  }
+
+  private static Map<String, String> buildArgs(Xpp3Dom configuration) {
+    final Map<String, String> buildArgs = new HashMap<>();
+    final Xpp3Dom child = configuration == null ? null : configuration.getChild("buildArgs");
+    if (child != null) {
+      for (Xpp3Dom buildArg : child.getChildren()) {
+        buildArgs.put(buildArg.getName(), buildArg.getValue());
+      }
+    }
+    return buildArgs;
+  }
+
+  private static String value(Xpp3Dom configuration, String name) {
+    final Xpp3Dom child = configuration == null ? null : configuration.getChild(name);
+    return child == null || child.getValue() == null ? null : child.getValue().trim();
+  }
+
+  private static File resolve(MavenProject project, String path) {
+    final File file = new File(path);
+    return file.isAbsolute() ? file : new File(project.getBasedir(), path);
+  }
+
+  private void prePullDockerInfoDependencies(MavenSession session, final ImagePuller puller) {
+    final Set<String> reactor = new HashSet<>();
+    for (MavenProject project : session.getProjects()) {
+      reactor.add(ArtifactUtils.key(
+          project.getGroupId(), project.getArtifactId(), project.getVersion()));
+    }
+
+    // The same docker-info artifact is typically a dependency of several modules
+    final Map<String, ArtifactRequest> requests = new LinkedHashMap<>();
+    for (MavenProject project : session.getProjects()) {
+      for (Dependency dependency : project.getDependencies()) {
+        if (!DOCKER_INFO_TYPE.equals(dependency.getType())
+            || reactor.contains(ArtifactUtils.key(
+                dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion()))) {
+          continue;
+        }
+
+        String classifier = dependency.getClassifier();
+        if (classifier == null || classifier.isEmpty()) {
+          classifier = DOCKER_INFO_TYPE;
+        }
+        final DefaultArtifact artifact = new DefaultArtifact(dependency.getGroupId(),
+            dependency.getArtifactId(), classifier, "jar", dependency.getVersion());
+        if (!requests.containsKey(artifact.toString())) {
+          final List<RemoteRepository> repositories =
+              new ArrayList<>(project.getRemoteProjectRepositories());
+          requests.put(artifact.toString(), new ArtifactRequest(artifact, repositories, null));
+        }
+      }
+    }
+
+    final RepositorySystemSession repositorySession = session.getRepositorySession();
+    for (final ArtifactRequest request : requests.values()) {
+      // Resolving may download the artifact, so it happens in the background too
+      puller.submit(new Runnable() {
+        @Override
+        public void run() {
+          final File file;
+          try {
+            file = repositorySystem.resolveArtifact(repositorySession, request)
+                .getArtifact().getFile();
+          } catch (ArtifactResolutionException e) {
+            logger.debug(MessageFormat.format("Not pre-pulling images of {0}: {1}",
+                request.getArtifact(), e.getMessage()));
+            return;
+          }
+
+          try {
+            for (String image : readImageNames(file)) {
+              puller.pull(image, false);
+            }
+          } catch (IOException e) {
+            logger.warn(MessageFormat.format("Could not read docker-info of {0}",
+                request.getArtifact()), e);
+          }
+        }
+      });
+    }
+  }
+
+  private static List<String> readImageNames(File dockerInfoJar) throws IOException {
+    final List<String> images = new ArrayList<>();
+    try (ZipFile zip = new ZipFile(dockerInfoJar)) {
+      final Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        final ZipEntry entry = entries.nextElement();
+        if (!IMAGE_NAME_ENTRY.matcher(entry.getName()).matches()) {
+          continue;
+        }
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8))) {
+          final String image = reader.readLine();
+          if (image != null && !image.trim().isEmpty()) {
+            images.add(image.trim());
+          }
+        }
+      }
+    }
+    return images;
+  }
+
+  private int intProperty(MavenSession session, String name, int defaultValue) {
+    final String value = property(session, name);
+    if (value != null) {
+      try {
+        return Integer.parseInt(value.trim());
+      } catch (NumberFormatException e) {
+        logger.warn(MessageFormat.format("Ignoring invalid {0} value {1}", name, value));
+      }
+    }
+    return defaultValue;
+  }
+
+  static String property(MavenSession session, String name) {
+    String value = session.getUserProperties().getProperty(name);
+    if (value == null) {
+      value = session.getSystemProperties().getProperty(name);
+    }
+    if (value == null && session.getTopLevelProject() != null) {
+      value = session.getTopLevelProject().getProperties().getProperty(name);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,39 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Extension
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile.extension;
+
+/**
+ * Resources that the goals of the plugin share across a session, like Docker clients, and that
+ * must be closed when the session ends.
+ *
+ * <p>When the projects have been read, the extension publishes a <tt>Queue&lt;Closeable&gt;</tt>
+ * under {@link #CLOSE_AT_SESSION_END_KEY} in the data of the repository session, and closes
+ * everything that the goals added to it when the session ends.  Without the extension, nothing is
+ * published and shared resources live until Maven exits.
+ */
+public final class SessionResources {
+
+  public static final String CLOSE_AT_SESSION_END_KEY =
+      SessionResources.class.getName() + ".closeAtSessionEnd";
+
+  private SessionResources() {
+  }
+}
@@ -0,0 +1,100 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile.extension;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class TestBaseImages {
+
+  @Test
+  public void testStagesAndScratchAreNotBaseImages() {
+    assertEquals(Arrays.asList("maven:3", "openjdk:latest"), read(
+        "FROM maven:3 AS build\n"
+        + "RUN mvn package\n"
+        + "FROM build AS test\n"
+        + "FROM --platform=linux/amd64 openjdk\n"
+        + "COPY --from=build /app.jar /\n"
+        + "FROM scratch\n"
+        + "FROM maven:3\n", null));
+  }
+
+  @Test
+  public void testArgsBeforeFirstFrom() {
+    final String dockerfile =
+        "ARG VERSION=8\n"
+        + "ARG REGISTRY\n"
+        + "FROM openjdk:${VERSION}\n"
+        + "FROM ${REGISTRY}/base:1\n"
+        + "ARG LATE=1\n"
+        + "FROM alpine:${LATE:-3.9}\n";
+
+    // An ARG without a value names an image only if the build sets it
+    assertEquals(Arrays.asList("openjdk:8", "alpine:3.9"), read(dockerfile, null));
+    assertEquals(Arrays.asList("openjdk:11", "registry.example.com/base:1", "alpine:3.9"),
+        read(dockerfile, map("VERSION", "11", "REGISTRY", "registry.example.com")));
+  }
+
+  @Test
+  public void testQuotedArgDefault() {
+    assertEquals(Collections.singletonList("ubuntu:18.04"), read(
+        "ARG IMAGE=\"ubuntu:18.04\"\n"
+        + "FROM $IMAGE\n", null));
+  }
+
+  @Test
+  public void testContinuationsCommentsAndEscapeDirective() {
+    assertEquals(Collections.singletonList("ubuntu:18.04"), read(
+        "FROM \\\n"
+        + "# a comment inside the continuation\n"
+        + "    ubuntu:18.04\n", null));
+    assertEquals(Collections.singletonList("mcr.microsoft.com/windows:1809"), read(
+        "# escape=`\n"
+        + "FROM `\n"
+        + "    mcr.microsoft.com/windows:1809\n", null));
+  }
+
+  @Test
+  public void testNormalize() {
+    assertEquals("ubuntu:latest", BaseImages.normalize("ubuntu"));
+    assertEquals("localhost:5000/base:latest", BaseImages.normalize("localhost:5000/base"));
+    assertEquals("localhost:5000/base:1", BaseImages.normalize("localhost:5000/base:1"));
+    assertEquals("ubuntu@sha256:1234", BaseImages.normalize("ubuntu@sha256:1234"));
+  }
+
+  private static List<String> read(String dockerfile, Map<String, String> buildArgs) {
+    return BaseImages.parse(DockerfileParser.parse(dockerfile), buildArgs);
+  }
+
+  private static Map<String, String> map(String... keysAndValues) {
+    final Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      map.put(keysAndValues[i], keysAndValues[i + 1]);
+    }
+    return map;
+  }
+}
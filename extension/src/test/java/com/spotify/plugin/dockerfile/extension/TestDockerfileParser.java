@@ -0,0 +1,62 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile.extension;
+
+import static org.junit.Assert.assertEquals;
+
+import com.spotify.plugin.dockerfile.extension.DockerfileParser.Instruction;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class TestDockerfileParser {
+
+  @Test
+  public void testParseJoinsContinuationsAndSkipsComments() {
+    final List<Instruction> instructions = DockerfileParser.parse(
+        "# a comment\n"
+        + "FROM openjdk:8\n"
+        + "RUN apt-get update && \\\n"
+        + "    # interleaved comment\n"
+        + "    apt-get install -y curl\n"
+        + "COPY --chown=1:1 [\"a.jar\", \"/app/\"]\n");
+
+    assertEquals(3, instructions.size());
+    assertEquals("FROM", instructions.get(0).keyword());
+    assertEquals(2, instructions.get(0).line());
+    assertEquals("apt-get update && apt-get install -y curl", instructions.get(1).arguments());
+    assertEquals(3, instructions.get(1).line());
+    assertEquals(Arrays.asList("a.jar", "/app/"), instructions.get(2).words());
+    assertEquals("1:1", instructions.get(2).flag("chown"));
+  }
+
+  @Test
+  public void testParseHonorsEscapeDirective() {
+    final List<Instruction> instructions = DockerfileParser.parse(
+        "# escape=`\n"
+        + "FROM windows\n"
+        + "RUN dir `\n"
+        + "    c:\\\n");
+
+    assertEquals(2, instructions.size());
+    assertEquals("dir c:\\", instructions.get(1).arguments());
+  }
+}
@@ -0,0 +1,146 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile.extension;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.codehaus.plexus.logging.AbstractLogger;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.Test;
+
+public class TestImagePuller {
+
+  @Test
+  public void testFailedPullIsLogged() throws Exception {
+    final DockerException failure = new DockerException("Cannot connect to the Docker daemon");
+    final List<String> warnings = Collections.synchronizedList(new ArrayList<String>());
+    final Logger logger = new AbstractLogger(Logger.LEVEL_DEBUG, "test") {
+      @Override
+      public void warn(String message, Throwable throwable) {
+        warnings.add(message);
+      }
+
+      @Override
+      public void debug(String message, Throwable throwable) {
+      }
+
+      @Override
+      public void info(String message, Throwable throwable) {
+      }
+
+      @Override
+      public void error(String message, Throwable throwable) {
+      }
+
+      @Override
+      public void fatalError(String message, Throwable throwable) {
+      }
+
+      @Override
+      public Logger getChildLogger(String name) {
+        return this;
+      }
+    };
+
+    try (ImagePuller puller =
+             new ImagePuller(failingClient(failure), logger, 1, new DaemonSlots())) {
+      try {
+        puller.pull("alpine:3.9", false).get();
+        fail("Expected the pull to fail");
+      } catch (ExecutionException e) {
+        assertSame(failure, e.getCause());
+      }
+    }
+
+    assertEquals(Collections.singletonList(
+        "Could not pre-pull image alpine:3.9: Cannot connect to the Docker daemon"), warnings);
+  }
+
+  @Test
+  public void testPullsTakeTheSlotsOfTheSession() throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final DockerClient daemon = (DockerClient) Proxy.newProxyInstance(
+        DockerClient.class.getClassLoader(), new Class<?>[] {DockerClient.class},
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+              case "inspectImage":
+                throw new ImageNotFoundException((String) args[0]);
+              case "pull":
+                final int now = running.incrementAndGet();
+                maxRunning.set(Math.max(maxRunning.get(), now));
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return null;
+              default:
+                return null;
+            }
+          }
+        });
+    final Logger logger = new ConsoleLogger(Logger.LEVEL_DISABLED, "test");
+    final DaemonSlots slots = new DaemonSlots();
+    slots.limit(DaemonSlots.PULL, 2);
+
+    try (ImagePuller puller = new ImagePuller(daemon, logger, 8, slots)) {
+      final List<Future<?>> pulls = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        pulls.add(puller.pull("alpine:3." + i, false));
+      }
+      for (Future<?> pull : pulls) {
+        pull.get();
+      }
+    }
+
+    assertTrue("at most 2 pulls ran at once, not " + maxRunning, maxRunning.get() <= 2);
+    assertEquals(2, slots.get(DaemonSlots.PULL).availablePermits());
+  }
+
+  private static DockerClient failingClient(final DockerException failure) {
+    return (DockerClient) Proxy.newProxyInstance(DockerClient.class.getClassLoader(),
+        new Class<?>[] {DockerClient.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("close".equals(method.getName())) {
+              return null;
+            }
+            throw failure;
+          }
+        });
+  }
+}
@@ -0,0 +1,77 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile.extension;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.Test;
+
+public class TestPrePullLifecycleParticipant {
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testSessionResourcesAreClosedWhenSessionEnds() throws Exception {
+    final PrePullLifecycleParticipant participant = new PrePullLifecycleParticipant();
+    final Field logger = PrePullLifecycleParticipant.class.getDeclaredField("logger");
+    logger.setAccessible(true);
+    logger.set(participant, new ConsoleLogger(Logger.LEVEL_DISABLED, "test"));
+    @SuppressWarnings("deprecation")
+    final MavenSession session = new MavenSession(null, new DefaultRepositorySystemSession(),
+        new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult());
+
+    participant.afterProjectsRead(session);
+    final Object published =
+        session.getRepositorySession().getData().get(SessionResources.CLOSE_AT_SESSION_END_KEY);
+    assertTrue(published instanceof Queue);
+
+    final AtomicInteger closed = new AtomicInteger();
+    final Queue<Closeable> resources = (Queue<Closeable>) published;
+    resources.add(new Closeable() {
+      @Override
+      public void close() throws IOException {
+        closed.incrementAndGet();
+        throw new IOException("already closed");
+      }
+    });
+    resources.add(new Closeable() {
+      @Override
+      public void close() {
+        closed.incrementAndGet();
+      }
+    });
+
+    participant.afterSessionEnd(session);
+    assertEquals(2, closed.get());
+    assertTrue(resources.isEmpty());
+  }
+}
@@ -25,11 +25,7 @@ import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.describedAs;
 import static org.hamcrest.Matchers.is;
 
-import com.google.common.base.Charsets;
 import com.google.common.io.CharStreams;
-import com.google.common.io.Files;
-import com.google.common.io.Resources;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -38,93 +34,21 @@ import java.nio.charset.StandardCharsets;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.junit.Before;
-import org.junit.Rule;
 import org.junit.Test;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.testcontainers.containers.GenericContainer;
-import org.testcontainers.containers.Network;
-import org.testcontainers.containers.output.Slf4jLogConsumer;
-import org.testcontainers.containers.wait.strategy.Wait;
 
+/**
+ * Tests the frontend and backend containers that the start goal of the plugin runs before the
+ * integration tests.  The frontend container talks to the backend container by its name.
+ */
 public class MainIT {
-  private static final Logger log = LoggerFactory.getLogger(MainIT.class);
-
-  private static final int BACKEND_PORT = 1337;
-  private static final int FRONTEND_PORT = 1338;
-
-  /**
-   * Create a Network that both containers are attached to. When the containers are setup, they have
-   * .withNetworkAliases("foo") set, which allows the other container to refer to http://foo/ when
-   * one container needs to talk to another.
-   *
-   * This is needed because container.getContainerIpAddress() is only for use for a test
-   * to communicate with a container, not container-to-container communication -
-   * getContainerIpAddress() will return "localhost" typically
-   */
-  @Rule public final Network network = Network.newNetwork();
-
-  @Rule
-  public final GenericContainer backendJob = createBackend(network);
-
-  @Rule
-  public final GenericContainer frontendJob = createFrontend(network);
-
-  private GenericContainer createBackend(final Network network) {
-    final String image;
-    try {
-      image = Resources.toString(
-          Resources.getResource("META-INF/docker/com.spotify.it/backend/image-name"),
-          Charsets.UTF_8).trim();
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
-
-    final GenericContainer container = new GenericContainer(image)
-        .withExposedPorts(BACKEND_PORT)
-        .withNetwork(network)
-        .withNetworkAliases("backend")
-        .waitingFor(Wait.forHttp("/api/version"));
-
-    // start early, since frontend needs to know the port of backend
-    container.start();
-
-    return container;
-  }
-
-  private GenericContainer createFrontend(final Network network) {
-    final String image;
-    try {
-      image = Files.readFirstLine(new File("target/docker/image-name"), Charsets.UTF_8);
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
-
-    return new GenericContainer(image)
-        .withExposedPorts(1338)
-        .withCommand("http://backend:" + BACKEND_PORT)
-        .withNetwork(network)
-        .withNetworkAliases("frontend");
-  }
 
   private URI frontend;
   private URI backend;
 
   @Before
   public void setUp() {
-    backend = httpUri(backendJob, BACKEND_PORT);
-    frontend = httpUri(frontendJob, FRONTEND_PORT);
-
-    backendJob.followOutput(new Slf4jLogConsumer(
-        LoggerFactory.getLogger(MainIT.class.getName() + ".backend")));
-
-    frontendJob.followOutput(new Slf4jLogConsumer(
-        LoggerFactory.getLogger(MainIT.class.getName() + ".frontend")));
-  }
-
-  private URI httpUri(GenericContainer container, int portNumber) {
-    return URI.create("http://" + container.getContainerIpAddress()
-                      + ":" + container.getMappedPort(portNumber));
+    backend = URI.create(System.getProperty("backend.uri"));
+    frontend = URI.create(System.getProperty("frontend.uri"));
   }
 
   @Test
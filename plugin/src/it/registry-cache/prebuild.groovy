@@ -0,0 +1,64 @@
+/*
+ * -/-/-
+ * Dockerfile Maven Plugin
+ * %%
+ * Copyright (C) 2015 - 2016 Spotify AB
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -\-\-
+ */
+
+import com.spotify.docker.client.DefaultDockerClient
+import com.spotify.docker.client.DockerClient
+import com.spotify.docker.client.exceptions.ContainerNotFoundException
+import com.spotify.docker.client.messages.ContainerConfig
+import com.spotify.docker.client.messages.HostConfig
+import com.spotify.docker.client.messages.PortBinding
+
+// Starts a local registry for the build to push to; verify.groovy removes it again
+String registryName = "dockerfile-maven-it-registry"
+
+DockerClient dockerClient = DefaultDockerClient.fromEnv().build()
+try {
+  try {
+    dockerClient.removeContainer(registryName, DockerClient.RemoveContainerParam.forceKill())
+  } catch (ContainerNotFoundException e) {
+    // Not left over from an earlier run
+  }
+
+  dockerClient.pull("registry:2")
+  HostConfig hostConfig = HostConfig.builder()
+      .portBindings(["5000/tcp": [PortBinding.of("127.0.0.1", 5000)]])
+      .build()
+  dockerClient.createContainer(ContainerConfig.builder()
+      .image("registry:2")
+      .exposedPorts("5000/tcp")
+      .hostConfig(hostConfig)
+      .build(), registryName)
+  dockerClient.startContainer(registryName)
+
+  long deadline = System.currentTimeMillis() + 30000
+  while (true) {
+    try {
+      new URL("http://localhost:5000/v2/").openStream().close()
+      break
+    } catch (IOException e) {
+      if (System.currentTimeMillis() > deadline) {
+        throw e
+      }
+      Thread.sleep(500)
+    }
+  }
+} finally {
+  dockerClient.close()
+}
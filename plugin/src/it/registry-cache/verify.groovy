@@ -0,0 +1,60 @@
+/*
+ * -/-/-
+ * Dockerfile Maven Plugin
+ * %%
+ * Copyright (C) 2015 - 2016 Spotify AB
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -\-\-
+ */
+
+import com.spotify.docker.client.DefaultDockerClient
+import com.spotify.docker.client.DockerClient
+
+String repository = "localhost:5000/dockerfile-maven-it/registry-cache"
+
+DockerClient dockerClient = DefaultDockerClient.fromEnv().build()
+try {
+  // The first build built the image and pushed it under its fingerprint tag as well
+  String imageId = new File(basedir, "target/docker/image-id").text.trim()
+  String fingerprintName = new File(basedir, "target/docker/fingerprint-image-name").text.trim()
+  assert fingerprintName.startsWith(repository + ":fingerprint-")
+  dockerClient.inspectDistribution(fingerprintName)
+
+  // Forget the image, like a fresh CI runner would
+  dockerClient.removeImage(imageId, true, false)
+
+  // Building the same sources again pulls the image instead of building it
+  String mvn = System.getProperty("os.name").startsWith("Windows") ? "mvn.cmd" : "mvn"
+  File secondLogFile = new File(basedir, "build-again.log")
+  Process process = new ProcessBuilder(
+      new File(System.getProperty("maven.home"), "bin/" + mvn).path,
+      "-B", "clean", "package", "-Dmaven.repo.local=" + localRepositoryPath)
+      .directory(basedir)
+      .redirectErrorStream(true)
+      .redirectOutput(secondLogFile)
+      .start()
+  assert process.waitFor() == 0
+
+  String secondLog = secondLogFile.getText("UTF-8")
+  assert secondLog.contains("Image ${fingerprintName} was built from the same fingerprint, " +
+                            "pulling it instead of building")
+  assert new File(basedir, "target/docker/image-id").text.trim() == imageId
+} finally {
+  try {
+    dockerClient.removeContainer("dockerfile-maven-it-registry",
+        DockerClient.RemoveContainerParam.forceKill())
+  } finally {
+    dockerClient.close()
+  }
+}
@@ -21,7 +21,7 @@
 package com.spotify.plugin.dockerfile;
 
 import com.google.auth.oauth2.GoogleCredentials;
-import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.io.Files;
 import com.spotify.docker.client.DefaultDockerClient;
@@ -32,13 +32,16 @@ import com.spotify.docker.client.auth.MultiRegistryAuthSupplier;
 import com.spotify.docker.client.auth.RegistryAuthSupplier;
 import com.spotify.docker.client.auth.gcr.ContainerRegistryAuthSupplier;
 import com.spotify.docker.client.exceptions.DockerCertificateException;
+import com.spotify.plugin.dockerfile.progress.ProgressEvent.Operation;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.apache.maven.archiver.MavenArchiveConfiguration;
@@ -62,7 +65,9 @@ public abstract class AbstractDockerMojo extends AbstractMojo {
     IMAGE_ID("image ID", "image-id"),
     REPOSITORY("repository", "repository"),
     TAG("tag", "tag"),
-    IMAGE_NAME("image name", "image-name");
+    IMAGE_NAME("image name", "image-name"),
+    TAGS("tags", "tags"),
+    FINGERPRINT_IMAGE_NAME("fingerprint image name", "fingerprint-image-name");
 
     private final String friendlyName;
     private final String fileName;
@@ -82,12 +87,12 @@ public abstract class AbstractDockerMojo extends AbstractMojo {
   }
 
   /**
-   * Directory containing the generated Docker info JAR.
+   * Directory containing the generated Docker info JAR and the image size report.
    */
   @Parameter(defaultValue = "${project.build.directory}",
       property = "dockerfile.outputDirectory",
       required = true)
-  private File buildDirectory;
+  protected File buildDirectory;
 
   /**
    * Directory where various Docker-related metadata fragments will be stored.
@@ -141,6 +146,28 @@ public abstract class AbstractDockerMojo extends AbstractMojo {
   @Parameter(defaultValue = "1", property = "dockerfile.retryCount")
   protected int retryCount;
 
+  /**
+   * The maximum number of builds that all goal executions of the session run against the daemon
+   * at the same time, e.g. in a parallel reactor build.  Further builds wait for a slot.  Zero
+   * means no limit.
+   */
+  @Parameter(defaultValue = "0", property = "dockerfile.maxConcurrentBuilds")
+  protected int maxConcurrentBuilds;
+
+  /**
+   * The maximum number of pulls that all goal executions of the session run at the same time.
+   * Zero means no limit.
+   */
+  @Parameter(defaultValue = "0", property = "dockerfile.maxConcurrentPulls")
+  protected int maxConcurrentPulls;
+
+  /**
+   * The maximum number of pushes that all goal executions of the session run at the same time.
+   * Zero means no limit.
+   */
+  @Parameter(defaultValue = "0", property = "dockerfile.maxConcurrentPushes")
+  protected int maxConcurrentPushes;
+
   @Parameter(property = "dockerfile.username")
   protected String username;
 
@@ -208,7 +235,7 @@ public abstract class AbstractDockerMojo extends AbstractMojo {
    * The current Maven session.
    */
   @Parameter(defaultValue = "${session}", readonly = true, required = true)
-  private MavenSession session;
+  protected MavenSession session;
 
   /**
    * The archive configuration to use for the Docker info JAR.  This can be used to embed additional
@@ -255,14 +282,19 @@ public abstract class AbstractDockerMojo extends AbstractMojo {
     }
   }
 
-  private void tryExecute(int attempts) throws MojoFailureException, MojoExecutionException {
+  void tryExecute(int attempts) throws MojoFailureException, MojoExecutionException {
     Preconditions.checkArgument(attempts > 0, "attempts must not be negative");
 
     MojoExecutionException exception = null;
 
     for (int attempt = 0; attempt < attempts; attempt++) {
       try {
-        execute(openDockerClient());
+        execute(limitDaemonLoad(LazyDockerClient.of(new SharedDockerClients.Factory() {
+          @Override
+          public DockerClient create() throws MojoExecutionException {
+            return openDockerClient();
+          }
+        })));
         return; // Not "break;" since we don't want to "throw exception;"
       } catch (MojoExecutionException e) {
         // Don't catch MojoFailureException, since that exception means "permanent failure"
@@ -293,13 +325,8 @@ public abstract class AbstractDockerMojo extends AbstractMojo {
       throws MojoExecutionException {
     final File metadataFile = ensureMetadataFile(metadata);
 
-    final String oldValue = readMetadata(metadata);
-    if (Objects.equals(oldValue, value)) {
-      return;
-    }
-
     try {
-      Files.write(value + "\n", metadataFile, Charsets.UTF_8);
+      MetadataFiles.write(metadataFile.toPath(), value);
     } catch (IOException e) {
       final String message =
           MessageFormat.format("Could not write {0} file at {1}", metadata.getFriendlyName(),
@@ -308,6 +335,16 @@ public abstract class AbstractDockerMojo extends AbstractMojo {
     }
   }
 
+  protected void deleteMetadata(@Nonnull Metadata metadata) throws MojoExecutionException {
+    final File metadataFile = ensureMetadataFile(metadata);
+    try {
+      MetadataFiles.write(metadataFile.toPath(), null);
+    } catch (IOException e) {
+      throw new MojoExecutionException(MessageFormat.format("Could not delete {0} file at {1}",
+          metadata.getFriendlyName(), metadataFile), e);
+    }
+  }
+
   private void writeTestMetadata() throws MojoExecutionException {
     if (writeTestMetadata && dockerInfoDirectory.exists()) {
       final File testMetadataDir = new File(testOutputDirectory, getMetaSubdir());
@@ -319,6 +356,9 @@ public abstract class AbstractDockerMojo extends AbstractMojo {
       }
 
       for (String name : dockerInfoDirectory.list()) {
+        if (!MetadataFiles.isMetadata(name)) {
+          continue;
+        }
         final File sourceFile = new File(dockerInfoDirectory, name);
         final File targetFile = new File(testMetadataDir, name);
         try {
@@ -342,6 +382,19 @@ public abstract class AbstractDockerMojo extends AbstractMojo {
     }
   }
 
+  void attachArtifact(@Nonnull String type, @Nonnull String classifier, @Nonnull File file) {
+    projectHelper.attachArtifact(project, type, classifier, file);
+  }
+
+  /**
+   * Returns the file that an artifact of this project with the given classifier and extension
+   * should be written to.
+   */
+  @Nonnull
+  protected File getArtifactFile(@Nonnull String classifier, @Nonnull String extension) {
+    return new File(buildDirectory, finalName + "-" + classifier + "." + extension);
+  }
+
   @Nonnull
   protected File buildDockerInfoJar(@Nonnull Log log) throws MojoExecutionException {
     final File jarFile = getJarFile(buildDirectory, finalName, classifier);
@@ -354,7 +407,8 @@ public abstract class AbstractDockerMojo extends AbstractMojo {
 
     if (dockerInfoDirectory.exists()) {
       final String prefix = getMetaSubdir();
-      archiver.getArchiver().addDirectory(dockerInfoDirectory, prefix);
+      archiver.getArchiver()
+          .addDirectory(dockerInfoDirectory, prefix, null, MetadataFiles.EXCLUDES);
     } else {
       log.warn("Docker info directory not created - Docker info JAR will be empty");
     }
@@ -384,14 +438,38 @@ public abstract class AbstractDockerMojo extends AbstractMojo {
     return new File(basedir, finalName + classifier + ".jar");
   }
 
+  /**
+   * Files and directories that this plugin writes itself.  They are not considered part of the
+   * contents of a build context, even when they are located inside it.
+   */
+  @Nonnull
+  protected List<Path> generatedPaths() {
+    final List<Path> paths = new ArrayList<>();
+    paths.add(dockerInfoDirectory.toPath());
+    paths.add(new File(testOutputDirectory, "META-INF/docker").toPath());
+    paths.add(getJarFile(buildDirectory, finalName, classifier).toPath());
+    paths.add(imageSizeReport());
+    return paths;
+  }
+
+  /**
+   * The image size report that the build goal writes after each build.  It is kept out of the
+   * docker info directory, which is packaged into the docker-info JAR.
+   */
+  @Nonnull
+  protected Path imageSizeReport() {
+    return new File(buildDirectory, ImageSizeReport.FILE_NAME).toPath();
+  }
+
   @Nonnull
   protected File ensureDockerInfoDirectory() throws MojoExecutionException {
-    if (!dockerInfoDirectory.exists()) {
-      if (!dockerInfoDirectory.mkdirs()) {
-        throw new MojoExecutionException(
-            MessageFormat
-                .format("Could not create Docker info directory {0}", dockerInfoDirectory));
-      }
+    try {
+      // Unlike File.mkdirs, this does not fail if another execution creates it at the same time
+      java.nio.file.Files.createDirectories(dockerInfoDirectory.toPath());
+    } catch (IOException e) {
+      throw new MojoExecutionException(
+          MessageFormat
+              .format("Could not create Docker info directory {0}", dockerInfoDirectory), e);
     }
     return dockerInfoDirectory;
   }
@@ -411,12 +489,8 @@ public abstract class AbstractDockerMojo extends AbstractMojo {
   protected String readMetadata(@Nonnull Metadata metadata) throws MojoExecutionException {
     final File metadataFile = ensureMetadataFile(metadata);
 
-    if (!metadataFile.exists()) {
-      return null;
-    }
-
     try {
-      return Files.readFirstLine(metadataFile, Charsets.UTF_8);
+      return MetadataFiles.read(metadataFile.toPath());
     } catch (IOException e) {
       final String message =
           MessageFormat.format("Could not read {0} file at {1}", metadata.getFileName(),
@@ -425,13 +499,51 @@ public abstract class AbstractDockerMojo extends AbstractMojo {
     }
   }
 
+  /**
+   * Fails if Maven runs in offline mode, for goals that can't do without a registry.
+   */
+  protected void requireOnline(@Nonnull String action) throws MojoFailureException {
+    if (session.isOffline()) {
+      throw new MojoFailureException(
+          MessageFormat.format("Can''t {0} in offline mode", action));
+    }
+  }
+
   @Nonnull
   protected static String formatImageName(@Nonnull String repository, @Nonnull String tag) {
     return repository + ":" + tag;
   }
 
   @Nonnull
-  private DockerClient openDockerClient() throws MojoExecutionException {
+  private DockerClient limitDaemonLoad(@Nonnull DockerClient dockerClient) {
+    final Map<Operation, Integer> limits = new EnumMap<>(Operation.class);
+    limits.put(Operation.BUILD, maxConcurrentBuilds);
+    limits.put(Operation.PULL, maxConcurrentPulls);
+    limits.put(Operation.PUSH, maxConcurrentPushes);
+    return DaemonLimits.forSession(session).limit(dockerClient, limits, getLog());
+  }
+
+  /**
+   * Opens the Docker client to use.  This is called when the client is first used, not when the
+   * goal starts executing.
+   */
+  @Nonnull
+  protected DockerClient openDockerClient() throws MojoExecutionException {
+    // Everything createDockerClient() depends on; the Maven settings are the same session-wide
+    final String configuration = Joiner.on('|').useForNull("").join(
+        dockerConfigFile, useMavenSettingsForAuth, googleContainerRegistryEnabled,
+        readTimeoutMillis, connectTimeoutMillis, useProxy, username, password);
+    return SharedDockerClients.forSession(session).get(configuration,
+        new SharedDockerClients.Factory() {
+          @Override
+          public DockerClient create() throws MojoExecutionException {
+            return createDockerClient();
+          }
+        });
+  }
+
+  @Nonnull
+  private DockerClient createDockerClient() throws MojoExecutionException {
     final RegistryAuthSupplier authSupplier = createRegistryAuthSupplier();
 
     try {
@@ -464,7 +576,10 @@ public abstract class AbstractDockerMojo extends AbstractMojo {
           )
       );
     }
-    if (googleContainerRegistryEnabled) {
+    if (session.isOffline()) {
+      // Looking up application default credentials can mean waiting on a metadata server
+      getLog().info("Google Container Registry support is disabled in offline mode");
+    } else if (googleContainerRegistryEnabled) {
       try {
         final RegistryAuthSupplier googleSupplier = googleContainerRegistryAuthSupplier();
         if (googleSupplier != null) {
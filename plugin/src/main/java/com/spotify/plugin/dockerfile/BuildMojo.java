@@ -21,20 +21,40 @@
 package com.spotify.plugin.dockerfile;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.gson.Gson;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerRequestException;
 import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import com.spotify.docker.client.exceptions.NotFoundException;
+import com.spotify.docker.client.messages.Image;
+import com.spotify.plugin.dockerfile.extension.BaseImages;
+import com.spotify.plugin.dockerfile.extension.DockerfileParser;
+import com.spotify.plugin.dockerfile.progress.ProgressEvent;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.MessageFormat;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -44,12 +64,23 @@ import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
 
 @Mojo(name = "build",
     defaultPhase = LifecyclePhase.PACKAGE,
     requiresProject = true,
     threadSafe = true)
 public class BuildMojo extends AbstractDockerMojo {
+  /**
+   * The label that identifies the project an image was built by, as <tt>groupId:artifactId</tt>.
+   */
+  static final String PROJECT_LABEL = "com.spotify.dockerfile.project";
+
+  /**
+   * The label that holds the fingerprint of the build an image was produced by.
+   */
+  static final String FINGERPRINT_LABEL = "com.spotify.dockerfile.fingerprint";
+
   /**
    * Regex for a valid docker repository name.  Used in validateRepository().
    */
@@ -77,13 +108,13 @@ public class BuildMojo extends AbstractDockerMojo {
    * be ran separately in order to tag the generated image with anything.
    */
   @Parameter(property = "dockerfile.repository")
-  private String repository;
+  protected String repository;
 
   /**
    * The tag to apply when building the Dockerfile, which is appended to the repository.
    */
   @Parameter(property = "dockerfile.tag", defaultValue = "latest")
-  private String tag;
+  protected String tag;
 
   /**
    * Disables the build goal; it becomes a no-op.
@@ -115,6 +146,123 @@ public class BuildMojo extends AbstractDockerMojo {
   @Parameter(property = "dockerfile.build.squash", defaultValue = "false")
   private boolean squash;
 
+  /**
+   * How to report Dockerfile patterns that defeat Docker's layer cache, such as copying the whole
+   * context before installing dependencies, build arguments that change on every build, or
+   * <tt>ADD</tt> of remote URLs.  One of <tt>off</tt>, <tt>warn</tt> or <tt>fail</tt>.
+   */
+  @Parameter(property = "dockerfile.build.lint", defaultValue = "warn")
+  private String lint;
+
+  /**
+   * Directory in which to keep saved images, keyed by a fingerprint of the build context, the
+   * Dockerfile and the build arguments.  When set, a build whose fingerprint is already in the
+   * directory loads the saved image instead of building it, which helps CI runners that start
+   * out with an empty Docker daemon but share a cache volume.  Note that a cached image is reused
+   * even if a newer version of its base image is available.
+   */
+  @Parameter(property = "dockerfile.build.imageCacheDirectory")
+  private File imageCacheDirectory;
+
+  /**
+   * The maximum total size, in megabytes, of the images kept in <tt>imageCacheDirectory</tt>.
+   * The least recently used images are evicted first.
+   */
+  @Parameter(property = "dockerfile.build.imageCacheMaxSize", defaultValue = "10240")
+  private long imageCacheMaxSize;
+
+  /**
+   * Whether to build identical images only once per session.  When several modules build the same
+   * context with the same Dockerfile, build arguments and cache flags, the first one builds the
+   * image and the others wait for it and tag its image instead of building it again.
+   */
+  @Parameter(property = "dockerfile.build.deduplicate", defaultValue = "false")
+  private boolean deduplicate;
+
+  /**
+   * How to report an image that grew past <tt>sizeMaxGrowth</tt>, or a layer that grew past
+   * <tt>sizeMaxLayerGrowth</tt>, compared to <tt>sizeBaseline</tt> or to the previous build.  One
+   * of <tt>off</tt>, <tt>warn</tt> or <tt>fail</tt>.  Unless this is <tt>off</tt>, the size of the
+   * image and of each of its layers is written to <tt>image-size.json</tt> in the output
+   * directory, <tt>${project.build.directory}</tt> by default.  The report is not packaged into
+   * the docker-info JAR and not part of the build fingerprint; it only ends up in the image if the
+   * Dockerfile copies it from the build context.  With <tt>warn</tt>, failing to measure the
+   * image is only logged.
+   */
+  @Parameter(property = "dockerfile.build.sizeCheck", defaultValue = "warn")
+  private String sizeCheck;
+
+  /**
+   * An <tt>image-size.json</tt> report to compare the image with, for example one kept from the
+   * last release.  Defaults to the report of the previous build of this project.
+   */
+  @Parameter(property = "dockerfile.build.sizeBaseline")
+  private File sizeBaseline;
+
+  /**
+   * How much the image may grow, in megabytes, before <tt>sizeCheck</tt> reports it.
+   */
+  @Parameter(property = "dockerfile.build.sizeMaxGrowth", defaultValue = "100")
+  private long sizeMaxGrowth;
+
+  /**
+   * How much a single layer may grow, in megabytes, before <tt>sizeCheck</tt> reports it.
+   */
+  @Parameter(property = "dockerfile.build.sizeMaxLayerGrowth", defaultValue = "100")
+  private long sizeMaxLayerGrowth;
+
+  /**
+   * Whether to label the image with the coordinates of the project, so that the <tt>prune</tt>
+   * goal can find the images built by earlier builds.  Off by default because the label is part
+   * of the image, so turning it on changes the ID of every image built from the same sources.
+   */
+  @Parameter(property = "dockerfile.build.projectLabel", defaultValue = "false")
+  private boolean projectLabel;
+
+  /**
+   * Whether to label the image with the fingerprint of the build, and to reuse an image with the
+   * same fingerprint that is already known to the Docker daemon instead of building it.  This
+   * lets clean workspaces and other checkouts of the same sources on the same host share builds.
+   * Note that a reused image is kept even if a newer version of its base image is available.
+   */
+  @Parameter(property = "dockerfile.build.fingerprintLabel", defaultValue = "false")
+  private boolean fingerprintLabel;
+
+  /**
+   * Whether to use the repository as a build cache shared between hosts.  The image is also
+   * tagged <tt>fingerprint-</tt> followed by the fingerprint of the build, and the push goal
+   * pushes that tag as well.  Before building, the registry is asked for the tag of the current
+   * fingerprint, and if it exists the image is pulled instead of built.  Requires
+   * <tt>repository</tt> to be set.
+   */
+  @Parameter(property = "dockerfile.build.registryCache", defaultValue = "false")
+  private boolean registryCache;
+
+  /**
+   * A file pinning the base images of the Dockerfile to digests, as written by the <tt>lock</tt>
+   * goal.  When it exists, each pinned base image is pulled by digest if it is not present
+   * locally, the image is built from a copy of the Dockerfile that names the pinned base images
+   * by digest, and <tt>pullNewerImage</tt> is ignored, so the build does not ask the registry for
+   * newer base images.
+   */
+  @Parameter(property = "dockerfile.lockFile", defaultValue = "${project.basedir}/docker.lock")
+  private File lockFile;
+
+  /**
+   * The copy of the Dockerfile with pinned base images that the current build uses, or null.
+   */
+  private Path lockedDockerfile;
+
+  /**
+   * The base images of the current build that are pinned by the lock file.
+   */
+  private Set<String> pinnedBaseImages = Collections.emptySet();
+
+  /**
+   * The index of the build context that the last fingerprint was computed from.
+   */
+  private ContextIndex contextIndex;
+
   @Override
   public void execute(DockerClient dockerClient)
       throws MojoExecutionException, MojoFailureException {
@@ -125,22 +273,14 @@ public class BuildMojo extends AbstractDockerMojo {
       return;
     }
 
-    log.info("dockerfile: " + dockerfile);
-    log.info("contextDirectory: " + contextDirectory);
-
-    Path dockerfilePath = null;
-    if (dockerfile != null) {
-      dockerfilePath = dockerfile.toPath();
-    }
-    final String imageId = buildImage(
-        dockerClient, log, verbose, contextDirectory.toPath(), dockerfilePath, repository, tag, 
-        pullNewerImage, noCache, buildArgs, cacheFrom, squash);
+    final String imageId = build(dockerClient, log);
 
     if (imageId == null) {
       log.warn("Docker build was successful, but no image was built");
     } else {
       log.info(MessageFormat.format("Detected build of image with id {0}", imageId));
       writeMetadata(Metadata.IMAGE_ID, imageId);
+      reportImageSize(dockerClient, log, imageId);
     }
 
     // Do this after the build so that other goals don't use the tag if it doesn't exist
@@ -157,6 +297,596 @@ public class BuildMojo extends AbstractDockerMojo {
     }
   }
 
+  /**
+   * Lints the Dockerfile and produces the image, without writing any metadata.
+   *
+   * @return the ID of the image, or null if the build did not report one
+   */
+  @Nullable
+  protected String build(@Nonnull DockerClient dockerClient, @Nonnull Log log)
+      throws MojoExecutionException, MojoFailureException {
+    log.info("dockerfile: " + dockerfile);
+    log.info("contextDirectory: " + contextDirectory);
+
+    final Path dockerfilePath = dockerfilePath();
+    final Path resolved = resolveDockerfile(contextDirectory.toPath(), dockerfilePath);
+
+    lintDockerfile(log, Severity.parse(lint, "dockerfile.build.lint"), resolved, buildArgs,
+        volatileBuildArgValues());
+
+    applyLockFile(dockerClient, log, resolved);
+
+    if (session.isOffline()) {
+      requireLocalBaseImages(dockerClient, log, resolved);
+    }
+
+    return obtainImage(dockerClient, log, dockerfilePath);
+  }
+
+  /**
+   * Writes the size report of the image and checks it against the baseline.
+   */
+  protected void reportImageSize(@Nonnull DockerClient dockerClient,
+                                 @Nonnull Log log,
+                                 @Nonnull String imageId)
+      throws MojoExecutionException, MojoFailureException {
+    final Severity severity = Severity.parse(sizeCheck, "dockerfile.build.sizeCheck");
+    if (severity == Severity.OFF) {
+      return;
+    }
+
+    final ImageSizeReport report;
+    try {
+      report = ImageSizeReport.of(imageId, dockerClient.inspectImage(imageId).size(),
+          dockerClient.history(imageId));
+    } catch (DockerException e) {
+      if (severity == Severity.WARN) {
+        log.warn("Could not inspect the size of the image, not checking it", e);
+        return;
+      }
+      throw new MojoExecutionException("Could not inspect the size of the image", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while inspecting the size of the image", e);
+    }
+
+    final Path reportFile = imageSizeReport();
+    final ImageSizeReport baseline;
+    try {
+      if (sizeBaseline != null) {
+        baseline = ImageSizeReport.read(sizeBaseline.toPath());
+        if (baseline == null) {
+          throw new MojoExecutionException("Could not find size baseline " + sizeBaseline);
+        }
+      } else {
+        baseline = ImageSizeReport.read(reportFile);
+      }
+      Files.createDirectories(reportFile.getParent());
+      report.write(reportFile);
+    } catch (IOException e) {
+      if (severity == Severity.WARN) {
+        log.warn("Could not write image size report " + reportFile, e);
+        return;
+      }
+      throw new MojoExecutionException("Could not write image size report " + reportFile, e);
+    }
+
+    log.info(MessageFormat.format("Image size is {0} in {1} layers",
+        ImageSizeReport.megabytes(report.size), report.layers.size()));
+    if (baseline != null) {
+      severity.report(log, "Image grew past its size budget", report.regressions(
+          baseline, sizeMaxGrowth * 1024 * 1024, sizeMaxLayerGrowth * 1024 * 1024));
+    }
+  }
+
+  @Nonnull
+  File lockFile() {
+    return lockFile;
+  }
+
+  boolean skipBuild() {
+    return skipBuild;
+  }
+
+  /**
+   * Returns the base images of the Dockerfile, in normalized form.
+   */
+  @Nonnull
+  List<String> baseImages() throws MojoExecutionException {
+    final Path resolved = resolveDockerfile(contextDirectory.toPath(), dockerfilePath());
+    if (resolved == null) {
+      return Collections.emptyList();
+    }
+    try {
+      return BaseImages.read(resolved, buildArgs);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Could not read Dockerfile " + resolved, e);
+    }
+  }
+
+  /**
+   * Returns the digests that the lock file pins the base images of the Dockerfile to, by base
+   * image, or null if there is no lock file.
+   */
+  @Nullable
+  private Map<String, String> lockedDigests(@Nullable Path dockerfile)
+      throws MojoExecutionException {
+    if (dockerfile == null || lockFile == null || !lockFile.isFile()) {
+      return null;
+    }
+    final Map<String, String> digests;
+    try {
+      digests = DockerLock.read(lockFile.toPath());
+    } catch (IOException e) {
+      throw new MojoExecutionException("Could not read " + lockFile, e);
+    }
+    final Map<String, String> locked = new TreeMap<>();
+    for (String baseImage : baseImages()) {
+      if (digests.containsKey(baseImage)) {
+        locked.put(baseImage, digests.get(baseImage));
+      }
+    }
+    return locked;
+  }
+
+  /**
+   * Pulls the base images pinned in the lock file if needed, and writes the copy of the
+   * Dockerfile that names them by digest for the build to use.
+   */
+  private void applyLockFile(@Nonnull DockerClient dockerClient,
+                             @Nonnull Log log,
+                             @Nullable Path dockerfile)
+      throws MojoExecutionException, MojoFailureException {
+    lockedDockerfile = null;
+    pinnedBaseImages = Collections.emptySet();
+    final Map<String, String> digests = lockedDigests(dockerfile);
+    if (digests == null) {
+      return;
+    }
+
+    final Map<String, String> pinned = new TreeMap<>();
+    for (String baseImage : baseImages()) {
+      final String digest = digests.get(baseImage);
+      if (digest == null) {
+        if (!baseImage.contains("@")) {
+          log.warn(MessageFormat.format(
+              "Base image {0} is not pinned in {1}; run dockerfile:lock to pin it", baseImage,
+              lockFile));
+        }
+        continue;
+      }
+      final String name = DockerLock.pinned(baseImage, digest);
+      try {
+        if (!imageExistLocally(dockerClient, name)) {
+          if (session.isOffline()) {
+            throw new MojoFailureException(MessageFormat.format(
+                "Can''t build offline; pinned base image {0} is not present locally", name));
+          }
+          log.info(MessageFormat.format("Pulling pinned base image {0}", name));
+          dockerClient.pull(name,
+              LoggingProgressHandler.forLog(log, verbose, ProgressEvent.Operation.PULL, name));
+        }
+      } catch (DockerException | InterruptedException e) {
+        throw new MojoExecutionException("Could not pull pinned base image " + name, e);
+      }
+      pinned.put(baseImage, name);
+    }
+
+    final Path locked = DockerLock.lockedDockerfile(dockerfile);
+    try {
+      final String content = DockerLock.rewrite(
+          new String(Files.readAllBytes(dockerfile), StandardCharsets.UTF_8),
+          BaseImages.resolve(DockerfileParser.parse(dockerfile), buildArgs), pinned);
+      if (content == null) {
+        Files.deleteIfExists(locked);
+        return;
+      }
+      DockerLock.writeIfChanged(locked, content);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Could not write " + locked, e);
+    }
+    lockedDockerfile = locked;
+    pinnedBaseImages = pinned.keySet();
+    log.info(MessageFormat.format(
+        "Using base images pinned in {0}, not checking for newer images", lockFile));
+  }
+
+  @Nonnull
+  Path contextPath() {
+    return contextDirectory.toPath();
+  }
+
+  @Nullable
+  Path dockerfilePath() {
+    return dockerfile == null ? null : dockerfile.toPath();
+  }
+
+  /**
+   * Produces the image for this build, either by building it or by reusing an identical image
+   * from the daemon, the image cache or the registry.
+   */
+  @Nullable
+  private String obtainImage(@Nonnull DockerClient dockerClient,
+                             @Nonnull Log log,
+                             @Nullable Path dockerfilePath)
+      throws MojoExecutionException, MojoFailureException {
+    final boolean useRegistryCache =
+        registryCache && repository != null && !session.isOffline();
+    if (registryCache && repository == null) {
+      log.warn("Not using the registry as a build cache because no repository is set");
+    } else if (registryCache && session.isOffline()) {
+      log.info("Not using the registry as a build cache in offline mode");
+    }
+
+    String fingerprint = null;
+    if (imageCacheDirectory != null || deduplicate || fingerprintLabel || useRegistryCache) {
+      fingerprint = fingerprint(dockerfilePath);
+      log.info(MessageFormat.format("Build fingerprint is {0}", fingerprint));
+    }
+
+    final String imageId = reuseOrBuild(dockerClient, log, dockerfilePath, fingerprint);
+
+    if (!useRegistryCache || imageId == null) {
+      deleteMetadata(Metadata.FINGERPRINT_IMAGE_NAME);
+      return imageId;
+    }
+    // The push goal pushes this name too, so that other hosts can find the image
+    final String fingerprintName = formatImageName(repository, fingerprintTag(fingerprint));
+    try {
+      dockerClient.tag(imageId, fingerprintName, true);
+    } catch (DockerException | InterruptedException e) {
+      throw new MojoExecutionException("Could not tag Docker image", e);
+    }
+    writeMetadata(Metadata.FINGERPRINT_IMAGE_NAME, fingerprintName);
+    return imageId;
+  }
+
+  @Nullable
+  private String reuseOrBuild(@Nonnull DockerClient dockerClient,
+                              @Nonnull Log log,
+                              @Nullable Path dockerfilePath,
+                              @Nullable String fingerprint)
+      throws MojoExecutionException, MojoFailureException {
+    ImageCache imageCache = null;
+
+    if (fingerprintLabel) {
+      final String labeledImageId = findLabeledImage(dockerClient, fingerprint);
+      if (labeledImageId != null) {
+        log.info(MessageFormat.format(
+            "Image {0} was built from the same fingerprint, not building", labeledImageId));
+        tagReusedImage(dockerClient, log, labeledImageId);
+        return labeledImageId;
+      }
+    }
+
+    if (imageCacheDirectory != null) {
+      imageCache = new ImageCache(
+          imageCacheDirectory.toPath(), imageCacheMaxSize * 1024 * 1024, log);
+      final String cachedImageId = imageCache.restore(dockerClient, fingerprint);
+      if (cachedImageId != null) {
+        tagReusedImage(dockerClient, log, cachedImageId);
+        return cachedImageId;
+      }
+    }
+
+    if (registryCache && repository != null && !session.isOffline()) {
+      final String pulledImageId = pullFingerprintImage(dockerClient, log, fingerprint);
+      if (pulledImageId != null) {
+        tagReusedImage(dockerClient, log, pulledImageId);
+        return pulledImageId;
+      }
+    }
+
+    if (!deduplicate) {
+      return buildAndStore(dockerClient, log, dockerfilePath, imageCache, fingerprint);
+    }
+
+    final ImageCache storeInto = imageCache;
+    final String key = Joiner.on('|').useForNull("").join(
+        contextDirectory.toPath().toAbsolutePath().normalize(), fingerprint, pullNewerImage,
+        noCache, cacheFrom);
+    return SessionBuilds.forSession(session).reuseOrBuild(key, new SessionBuilds.Build() {
+      @Override
+      public String build() throws MojoExecutionException, MojoFailureException {
+        return buildAndStore(dockerClient, log, dockerfilePath, storeInto, fingerprint);
+      }
+
+      @Override
+      public void reuse(String imageId) throws MojoExecutionException {
+        tagReusedImage(dockerClient, log, imageId);
+      }
+    }, log);
+  }
+
+  @Nullable
+  private String buildAndStore(@Nonnull DockerClient dockerClient,
+                               @Nonnull Log log,
+                               @Nullable Path dockerfilePath,
+                               @Nullable ImageCache imageCache,
+                               @Nullable String fingerprint)
+      throws MojoExecutionException, MojoFailureException {
+    final boolean offline = session.isOffline();
+    // Only the base images may be up to date already; cacheFrom images are still refreshed
+    final boolean pullBaseImages = pullNewerImage && !offline && lockedDockerfile == null
+        && !baseImagesWarmed(log, resolveDockerfile(contextDirectory.toPath(), dockerfilePath));
+    final String imageId = buildImage(dockerClient, log, verbose, contextDirectory.toPath(),
+        lockedDockerfile != null ? lockedDockerfile : dockerfilePath, repository, tag,
+        pullNewerImage, pullBaseImages, noCache, buildArgs, cacheFrom, squash,
+        labels(fingerprint), offline);
+
+    if (imageCache != null && imageId != null) {
+      imageCache.store(dockerClient, fingerprint, imageId);
+    }
+    return imageId;
+  }
+
+  /**
+   * Returns the labels to build the image with.  There is deliberately no build time label: it
+   * would give every build a new image ID, even when all of its layers come from the cache, and
+   * the daemon records the creation time of each image anyway.
+   */
+  @Nonnull
+  private Map<String, String> labels(@Nullable String fingerprint) {
+    final Map<String, String> labels = new TreeMap<>();
+    if (projectLabel) {
+      labels.put(PROJECT_LABEL, projectCoordinates(project));
+    }
+    if (fingerprintLabel && fingerprint != null) {
+      labels.put(FINGERPRINT_LABEL, fingerprint);
+    }
+    return labels;
+  }
+
+  /**
+   * Asks the daemon for the most recent image labeled with the given fingerprint.
+   *
+   * @return the ID of the image, or null if there is none
+   */
+  @Nullable
+  private static String findLabeledImage(@Nonnull DockerClient dockerClient,
+                                         @Nonnull String fingerprint)
+      throws MojoExecutionException {
+    final List<Image> images;
+    try {
+      images = dockerClient.listImages(
+          DockerClient.ListImagesParam.withLabel(FINGERPRINT_LABEL, fingerprint));
+    } catch (DockerException | InterruptedException e) {
+      throw new MojoExecutionException("Could not list Docker images", e);
+    }
+
+    Image newest = null;
+    for (Image image : images) {
+      if (newest == null || created(image) > created(newest)) {
+        newest = image;
+      }
+    }
+    return newest == null ? null : newest.id();
+  }
+
+  /**
+   * Pulls the image of the given fingerprint from the repository, if it was pushed there.
+   *
+   * @return the ID of the pulled image, or null if the registry does not have it
+   */
+  @Nullable
+  private String pullFingerprintImage(@Nonnull DockerClient dockerClient,
+                                      @Nonnull Log log,
+                                      @Nonnull String fingerprint)
+      throws MojoExecutionException {
+    final String name = formatImageName(repository, fingerprintTag(fingerprint));
+    try {
+      // Only asks the registry for the manifest, which is much cheaper than a failed pull
+      dockerClient.inspectDistribution(name);
+    } catch (DockerException e) {
+      if (isNotInRegistry(e)) {
+        log.debug(MessageFormat.format("Image {0} is not in the registry: {1}", name,
+            e.getMessage()));
+      } else {
+        log.warn(MessageFormat.format(
+            "Could not look up {0} in the registry, building instead", name), e);
+      }
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while looking up " + name, e);
+    }
+
+    log.info(MessageFormat.format(
+        "Image {0} was built from the same fingerprint, pulling it instead of building", name));
+    try {
+      dockerClient.pull(name,
+          LoggingProgressHandler.forLog(log, verbose, ProgressEvent.Operation.PULL, name));
+      return dockerClient.inspectImage(name).id();
+    } catch (DockerException e) {
+      log.warn(MessageFormat.format("Could not pull {0}, building instead", name), e);
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while pulling " + name, e);
+    }
+  }
+
+  /**
+   * Whether a failed distribution inspect means that the registry does not have the image, as
+   * opposed to the registry being unreachable or refusing the credentials.
+   */
+  static boolean isNotInRegistry(@Nonnull DockerException e) {
+    if (e instanceof NotFoundException) {
+      return true;
+    }
+    if (e instanceof DockerRequestException && ((DockerRequestException) e).status() == 404) {
+      return true;
+    }
+    // Some daemons pass the registry's error on with a server error status
+    return Strings.nullToEmpty(e.getMessage()).contains("manifest unknown");
+  }
+
+  @Nonnull
+  static String fingerprintTag(@Nonnull String fingerprint) {
+    return "fingerprint-" + fingerprint;
+  }
+
+  static long created(@Nonnull Image image) {
+    try {
+      return image.created() == null ? 0 : Long.parseLong(image.created());
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  @Nonnull
+  static String projectCoordinates(@Nonnull MavenProject project) {
+    return project.getGroupId() + ":" + project.getArtifactId();
+  }
+
+  /**
+   * Fails if a base image of the Dockerfile is not present locally, since the daemon would
+   * otherwise try to pull it and only fail once the registry times out.
+   */
+  private void requireLocalBaseImages(@Nonnull DockerClient dockerClient,
+                                      @Nonnull Log log,
+                                      @Nullable Path dockerfile)
+      throws MojoExecutionException, MojoFailureException {
+    if (dockerfile == null) {
+      return;
+    }
+    final List<String> missing = new ArrayList<>();
+    try {
+      for (String baseImage : BaseImages.read(dockerfile, buildArgs)) {
+        // applyLockFile already made sure that the pinned ones are present
+        if (!pinnedBaseImages.contains(baseImage)
+            && !imageExistLocally(dockerClient, baseImage)) {
+          missing.add(baseImage);
+        }
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException("Could not read Dockerfile " + dockerfile, e);
+    } catch (DockerException | InterruptedException e) {
+      throw new MojoExecutionException("Could not inspect base images", e);
+    }
+    if (!missing.isEmpty()) {
+      throw new MojoFailureException(MessageFormat.format(
+          "Can''t build offline; base image(s) {0} are not present locally", missing));
+    }
+    log.info("Offline mode: not pulling base images, using the ones present locally");
+  }
+
+  /**
+   * Checks whether the extension already pulled all base images of the Dockerfile during this
+   * session, waiting for pulls that are still in progress.
+   */
+  private boolean baseImagesWarmed(@Nonnull Log log, @Nullable Path dockerfile)
+      throws MojoExecutionException {
+    final Object warmed =
+        session.getRepositorySession().getData().get(BaseImages.WARMED_IMAGES_KEY);
+    if (dockerfile == null || !(warmed instanceof Map)) {
+      return false;
+    }
+
+    final List<String> baseImages;
+    try {
+      baseImages = BaseImages.read(dockerfile, buildArgs);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Could not read Dockerfile " + dockerfile, e);
+    }
+    if (baseImages.isEmpty()) {
+      return false;
+    }
+
+    for (String baseImage : baseImages) {
+      final Object pull = ((Map<?, ?>) warmed).get(baseImage);
+      if (!(pull instanceof Future)) {
+        return false;
+      }
+      try {
+        ((Future<?>) pull).get();
+      } catch (ExecutionException e) {
+        return false;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MojoExecutionException("Interrupted while waiting for " + baseImage, e);
+      }
+    }
+
+    log.info(MessageFormat.format(
+        "Base image(s) {0} were pulled at the start of the build, not pulling them again",
+        baseImages));
+    return true;
+  }
+
+  /**
+   * Computes a fingerprint of everything that determines the contents of the built image: the
+   * files in the build context, the Dockerfile, the digests its base images are pinned to and the
+   * build arguments.
+   */
+  @Nonnull
+  String fingerprint(@Nullable Path dockerfilePath) throws MojoExecutionException {
+    final Path context = contextDirectory.toPath().toAbsolutePath().normalize();
+    final List<Path> excludes = generatedPaths();
+    if (imageCacheDirectory != null) {
+      excludes.add(imageCacheDirectory.toPath());
+    }
+
+    final Hasher hasher = Hashing.sha256().newHasher();
+    final Path resolved = resolveDockerfile(context, dockerfilePath);
+    try {
+      if (resolved != null) {
+        // The copy with pinned base images is derived from the Dockerfile and the lock file
+        excludes.add(DockerLock.lockedDockerfile(resolved.toAbsolutePath().normalize()));
+      }
+      contextIndex = ContextIndex.scan(context, excludes, contextIndex);
+      hasher.putString(contextIndex.digest(), StandardCharsets.UTF_8);
+
+      if (resolved != null) {
+        final Path absolute = resolved.toAbsolutePath().normalize();
+        hasher.putString(context.relativize(absolute).toString().replace('\\', '/'),
+            StandardCharsets.UTF_8);
+        hasher.putBytes(Files.readAllBytes(absolute));
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException("Could not fingerprint Docker context " + context, e);
+    }
+
+    final Map<String, String> lockedDigests = lockedDigests(resolved);
+    if (lockedDigests != null) {
+      for (Map.Entry<String, String> digest : lockedDigests.entrySet()) {
+        hasher.putString(DockerLock.pinned(digest.getKey(), digest.getValue()),
+            StandardCharsets.UTF_8);
+        hasher.putByte((byte) 0);
+      }
+    }
+
+    if (buildArgs != null) {
+      for (Map.Entry<String, String> buildArg : new TreeMap<>(buildArgs).entrySet()) {
+        hasher.putString(buildArg.getKey(), StandardCharsets.UTF_8);
+        hasher.putByte((byte) '=');
+        hasher.putString(String.valueOf(buildArg.getValue()), StandardCharsets.UTF_8);
+        hasher.putByte((byte) 0);
+      }
+    }
+    hasher.putBoolean(squash);
+
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Gives an image that was reused instead of built the name it would have been built with.
+   */
+  private void tagReusedImage(@Nonnull DockerClient dockerClient,
+                              @Nonnull Log log,
+                              @Nonnull String imageId) throws MojoExecutionException {
+    if (repository == null) {
+      return;
+    }
+    final String name = formatImageName(repository, tag);
+    log.info(MessageFormat.format("Reusing image {0} as {1}", imageId, name));
+    try {
+      dockerClient.tag(imageId, name, true);
+    } catch (DockerException | InterruptedException e) {
+      throw new MojoExecutionException("Could not tag Docker image", e);
+    }
+  }
+
   @Nullable
   static String buildImage(@Nonnull DockerClient dockerClient,
                            @Nonnull Log log,
@@ -166,10 +896,13 @@ public class BuildMojo extends AbstractDockerMojo {
                            @Nullable String repository,
                            @Nonnull String tag,
                            boolean pullNewerImage,
+                           boolean pullBaseImages,
                            boolean noCache,
                            @Nullable Map<String,String> buildArgs,
                            @Nullable List<String> cacheFrom,
-                           boolean squash)
+                           boolean squash,
+                           @Nullable Map<String, String> labels,
+                           boolean offline)
       throws MojoExecutionException, MojoFailureException {
 
     log.info(MessageFormat.format("Building Docker context {0}", contextDirectory));
@@ -183,8 +916,10 @@ public class BuildMojo extends AbstractDockerMojo {
           contextDirectory.relativize(dockerfile)));
     }
 
-    final LoggingProgressHandler progressHandler = new LoggingProgressHandler(log, verbose);
-    if (pullNewerImage) {
+    final LoggingProgressHandler progressHandler = new LoggingProgressHandler(log, verbose,
+        ProgressEvent.Operation.BUILD,
+        repository == null ? null : formatImageName(repository, tag));
+    if (pullBaseImages) {
       buildParameters.add(DockerClient.BuildParam.pullNewerImage());
     }
     if (noCache) {
@@ -199,7 +934,13 @@ public class BuildMojo extends AbstractDockerMojo {
       final List<String> cacheFromExistLocally = new ArrayList<>();
       for (String image : cacheFrom) {
         try {
-          if (pullNewerImage || !imageExistLocally(dockerClient, image)) {
+          if (offline) {
+            if (!imageExistLocally(dockerClient, image)) {
+              log.warn(MessageFormat.format("Image {0} is not present locally, build will not "
+                  + "use it for cache-from in offline mode", image));
+              continue;
+            }
+          } else if (pullNewerImage || !imageExistLocally(dockerClient, image)) {
             dockerClient.pull(image);
           }
           log.info(MessageFormat.format("Build will use image {0} for cache-from", image));
@@ -221,6 +962,10 @@ public class BuildMojo extends AbstractDockerMojo {
       buildParameters.add(new DockerClient.BuildParam("squash", encodeBuildParam(squash)));
     }
 
+    if (labels != null && !labels.isEmpty()) {
+      buildParameters.add(new DockerClient.BuildParam("labels", encodeBuildParam(labels)));
+    }
+
     final DockerClient.BuildParam[] buildParametersArray =
         buildParameters.toArray(new DockerClient.BuildParam[buildParameters.size()]);
 
@@ -288,6 +1033,66 @@ public class BuildMojo extends AbstractDockerMojo {
     }
   }
   
+  /**
+   * Returns the Dockerfile that a build of the given context would use, or null if there is none.
+   */
+  @Nullable
+  static Path resolveDockerfile(@Nonnull Path contextDirectory, @Nullable Path dockerfile) {
+    if (dockerfile != null) {
+      return Files.exists(dockerfile) ? dockerfile : null;
+    }
+    for (String name : new String[] {"Dockerfile", "dockerfile"}) {
+      final Path candidate = contextDirectory.resolve(name);
+      if (Files.exists(candidate)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  static void lintDockerfile(@Nonnull Log log,
+                             @Nonnull Severity severity,
+                             @Nullable Path dockerfile,
+                             @Nullable Map<String, String> buildArgs,
+                             @Nonnull Collection<String> volatileValues)
+      throws MojoExecutionException, MojoFailureException {
+    if (severity == Severity.OFF || dockerfile == null) {
+      return;
+    }
+
+    final List<DockerfileParser.Instruction> instructions;
+    try {
+      instructions = DockerfileParser.parse(dockerfile);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Could not read Dockerfile " + dockerfile, e);
+    }
+
+    severity.report(log, "Dockerfile " + dockerfile + " defeats the Docker layer cache",
+        DockerfileLinter.lint(dockerfile.getFileName().toString(), instructions, buildArgs,
+            volatileValues));
+  }
+
+  /**
+   * Values that a build argument could be given that are different on every build.  Currently
+   * this is just <tt>${maven.build.timestamp}</tt>, formatted the way Maven formats it.
+   */
+  @Nonnull
+  private Collection<String> volatileBuildArgValues() {
+    final Date startTime = session.getRequest().getStartTime();
+    if (startTime == null) {
+      return Collections.emptyList();
+    }
+    final String format = project.getProperties()
+        .getProperty("maven.build.timestamp.format", "yyyy-MM-dd'T'HH:mm:ss'Z'");
+    try {
+      final SimpleDateFormat dateFormat = new SimpleDateFormat(format);
+      dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+      return Collections.singletonList(dateFormat.format(startTime));
+    } catch (IllegalArgumentException e) {
+      return Collections.emptyList();
+    }
+  }
+
   private static String encodeBuildParam(Object buildParam) throws MojoExecutionException {
     try {
       return URLEncoder.encode(new Gson().toJson(buildParam), "utf-8");
@@ -296,7 +1101,7 @@ public class BuildMojo extends AbstractDockerMojo {
     }
   }
 
-  private static boolean imageExistLocally(DockerClient dockerClient, String image)
+  static boolean imageExistLocally(DockerClient dockerClient, String image)
           throws DockerException, InterruptedException {
     try {
       dockerClient.inspectImage(image);
@@ -0,0 +1,358 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.EventsParam;
+import com.spotify.docker.client.DockerClient.LogsParam;
+import com.spotify.docker.client.EventStream;
+import com.spotify.docker.client.LogMessage;
+import com.spotify.docker.client.LogStream;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ContainerState;
+import com.spotify.docker.client.messages.Event;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Waits for containers to become ready, all at the same time and within one deadline.  A
+ * container is ready once every condition that applies to it holds:
+ *
+ * <ul>
+ * <li>its healthcheck, if the image has one, reports it healthy;</li>
+ * <li>its output contains a line matching <tt>waitForLog</tt>, if set;</li>
+ * <li>a TCP connection to the host port of <tt>waitForPort</tt> succeeds, if set.</li>
+ * </ul>
+ *
+ * <p>Health transitions and exits are taken from the Docker events stream rather than by polling
+ * the containers, so a container counts as ready as soon as the daemon reports it.
+ */
+final class ContainerReadiness implements Closeable {
+
+  private static final String RUNNING = "running";
+  private static final String HEALTHY = "healthcheck";
+  private static final String LOGGED = "log line";
+  private static final String LISTENING = "port";
+
+  private static final int CONNECT_TIMEOUT_MILLIS = 500;
+  private static final long PROBE_INTERVAL_MILLIS = 100;
+
+  /**
+   * A container to wait for.
+   */
+  static final class Target {
+    final String name;
+    final String containerId;
+    @Nullable final Pattern logPattern;
+    @Nullable final InetSocketAddress probeAddress;
+
+    Target(@Nonnull String name,
+           @Nonnull String containerId,
+           @Nullable Pattern logPattern,
+           @Nullable InetSocketAddress probeAddress) {
+      this.name = name;
+      this.containerId = containerId;
+      this.logPattern = logPattern;
+      this.probeAddress = probeAddress;
+    }
+  }
+
+  private final DockerClient dockerClient;
+  private final Log log;
+  private final ExecutorService executor =
+      Executors.newCachedThreadPool(DockerThreads.factory("dockerfile-ready"));
+  private final List<Closeable> streams = Collections.synchronizedList(new ArrayList<Closeable>());
+
+  /**
+   * The conditions of each container, by container ID and then by description.  They are all
+   * created before any other thread starts, and only completed afterwards.
+   */
+  private final Map<String, Map<String, CompletableFuture<Void>>> conditions = new HashMap<>();
+
+  ContainerReadiness(@Nonnull DockerClient dockerClient, @Nonnull Log log) {
+    this.dockerClient = dockerClient;
+    this.log = log;
+  }
+
+  /**
+   * Waits until all targets are ready.
+   *
+   * @throws MojoExecutionException if a container exits, or is not ready before the timeout
+   */
+  void await(@Nonnull List<Target> targets, long timeoutMillis)
+      throws MojoExecutionException, InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+    final List<EventsParam> filters = new ArrayList<>();
+    filters.add(EventsParam.type(Event.Type.CONTAINER));
+    filters.add(EventsParam.since(System.currentTimeMillis() / 1000));
+    for (Target target : targets) {
+      filters.add(EventsParam.container(target.containerId));
+      final Map<String, CompletableFuture<Void>> pending = new LinkedHashMap<>();
+      pending.put(RUNNING, new CompletableFuture<Void>());
+      pending.put(HEALTHY, new CompletableFuture<Void>());
+      if (target.logPattern != null) {
+        pending.put(LOGGED, new CompletableFuture<Void>());
+      }
+      if (target.probeAddress != null) {
+        pending.put(LISTENING, new CompletableFuture<Void>());
+      }
+      conditions.put(target.containerId, pending);
+    }
+
+    // Listen before inspecting, so that no transition is missed in between
+    final EventStream events;
+    try {
+      events = dockerClient.events(filters.toArray(new EventsParam[filters.size()]));
+    } catch (DockerException e) {
+      throw new MojoExecutionException("Could not follow Docker events", e);
+    }
+    streams.add(events);
+    executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        follow(events);
+      }
+    });
+
+    for (Target target : targets) {
+      watch(target);
+    }
+
+    for (Target target : targets) {
+      for (Map.Entry<String, CompletableFuture<Void>> condition
+          : conditions.get(target.containerId).entrySet()) {
+        try {
+          // Every wait counts against the same deadline
+          final long remaining = deadline - System.nanoTime();
+          condition.getValue().get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+          throw new MojoExecutionException(MessageFormat.format(
+              "Container {0} did not become ready: {1}", target.name, e.getCause().getMessage()),
+              e.getCause());
+        } catch (TimeoutException e) {
+          throw new MojoExecutionException(MessageFormat.format(
+              "Container {0} was not ready after {1} ms, still waiting for {2}", target.name,
+              timeoutMillis, pending(target)));
+        }
+      }
+      log.info(MessageFormat.format("Container {0} is ready", target.name));
+    }
+  }
+
+  /**
+   * Checks the current state of a container and starts its probes.
+   */
+  private void watch(@Nonnull final Target target)
+      throws MojoExecutionException, InterruptedException {
+    final Map<String, CompletableFuture<Void>> pending = conditions.get(target.containerId);
+
+    final ContainerState state;
+    try {
+      state = dockerClient.inspectContainer(target.containerId).state();
+    } catch (DockerException e) {
+      throw new MojoExecutionException("Could not inspect container " + target.name, e);
+    }
+    if (Boolean.TRUE.equals(state.running())) {
+      pending.get(RUNNING).complete(null);
+    } else {
+      pending.get(RUNNING).completeExceptionally(new IllegalStateException(
+          MessageFormat.format("it exited with code {0}", state.exitCode())));
+    }
+    // Without a healthcheck there is nothing to wait for
+    if (state.health() == null || "healthy".equals(state.health().status())) {
+      pending.get(HEALTHY).complete(null);
+    } else if ("unhealthy".equals(state.health().status())) {
+      pending.get(HEALTHY).completeExceptionally(unhealthy());
+    }
+
+    final CompletableFuture<Void> logged = pending.get(LOGGED);
+    if (logged != null) {
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          followLogs(target, logged);
+        }
+      });
+    }
+
+    final CompletableFuture<Void> listening = pending.get(LISTENING);
+    if (listening != null) {
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          probe(target.probeAddress, listening);
+        }
+      });
+    }
+  }
+
+  private void follow(@Nonnull EventStream events) {
+    try {
+      while (events.hasNext()) {
+        final Event event = events.next();
+        if (event.actor() == null || event.action() == null) {
+          continue;
+        }
+        final Map<String, CompletableFuture<Void>> pending = conditions.get(event.actor().id());
+        if (pending != null) {
+          onEvent(pending, event.action());
+        }
+      }
+    } catch (RuntimeException e) {
+      // The stream is closed once all containers are ready
+      log.debug("Stopped following Docker events: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Updates the conditions of a container with an event about it.
+   */
+  static void onEvent(@Nonnull Map<String, CompletableFuture<Void>> pending,
+                      @Nonnull String action) {
+    switch (action) {
+      case "health_status: healthy":
+        pending.get(HEALTHY).complete(null);
+        break;
+      case "health_status: unhealthy":
+        // The healthcheck gave up, so it will not report the container healthy any more
+        pending.get(HEALTHY).completeExceptionally(unhealthy());
+        break;
+      case "die":
+        final IllegalStateException exited = new IllegalStateException("it exited");
+        for (CompletableFuture<Void> condition : pending.values()) {
+          condition.completeExceptionally(exited);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  @Nonnull
+  private static IllegalStateException unhealthy() {
+    return new IllegalStateException("its healthcheck reports it unhealthy");
+  }
+
+  private void followLogs(@Nonnull Target target, @Nonnull CompletableFuture<Void> logged) {
+    try (LogStream logs = dockerClient.logs(target.containerId, LogsParam.follow(),
+        LogsParam.stdout(), LogsParam.stderr())) {
+      streams.add(logs);
+      final StringBuilder line = new StringBuilder();
+      while (!logged.isDone() && logs.hasNext()) {
+        final LogMessage message = logs.next();
+        line.append(StandardCharsets.UTF_8.decode(message.content()));
+        int end;
+        while ((end = line.indexOf("\n")) >= 0) {
+          if (target.logPattern.matcher(line.substring(0, end)).find()) {
+            logged.complete(null);
+            return;
+          }
+          line.delete(0, end + 1);
+        }
+      }
+      if (target.logPattern.matcher(line).find()) {
+        logged.complete(null);
+      }
+    } catch (DockerException | RuntimeException e) {
+      logged.completeExceptionally(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void probe(@Nonnull InetSocketAddress address,
+                            @Nonnull CompletableFuture<Void> listening) {
+    while (!listening.isDone()) {
+      try (Socket socket = new Socket()) {
+        socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+        listening.complete(null);
+        return;
+      } catch (IOException e) {
+        // Not listening yet
+      }
+      try {
+        Thread.sleep(PROBE_INTERVAL_MILLIS);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  @Nonnull
+  private List<String> pending(@Nonnull Target target) {
+    final List<String> pending = new ArrayList<>();
+    for (Map.Entry<String, CompletableFuture<Void>> condition
+        : conditions.get(target.containerId).entrySet()) {
+      if (!condition.getValue().isDone()) {
+        pending.add(condition.getKey());
+      }
+    }
+    return pending;
+  }
+
+  @Override
+  public void close() {
+    for (CompletableFuture<Void> condition : allConditions()) {
+      condition.cancel(false);
+    }
+    synchronized (streams) {
+      for (Closeable stream : streams) {
+        try {
+          stream.close();
+        } catch (IOException | RuntimeException e) {
+          log.debug("Could not close Docker stream: " + e.getMessage());
+        }
+      }
+    }
+    executor.shutdownNow();
+  }
+
+  @Nonnull
+  private List<CompletableFuture<Void>> allConditions() {
+    final List<CompletableFuture<Void>> all = new ArrayList<>();
+    for (Map<String, CompletableFuture<Void>> pending : conditions.values()) {
+      all.addAll(pending.values());
+    }
+    return all;
+  }
+}
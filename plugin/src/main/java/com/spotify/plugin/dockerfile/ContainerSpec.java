@@ -0,0 +1,100 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A container for the <tt>start</tt> goal to run, as configured in a <tt>&lt;container&gt;</tt>
+ * element.
+ */
+public class ContainerSpec {
+
+  /**
+   * The name of the container within the project, used in the names of the properties that
+   * describe it.
+   */
+  private String name;
+
+  /**
+   * The image to run: <tt>groupId:artifactId</tt> of a <tt>docker-info</tt> dependency, or an
+   * image name.  Defaults to the image built by this project.
+   */
+  private String image;
+
+  /**
+   * The container ports to publish on random ports of the Docker host, such as <tt>8080</tt> or
+   * <tt>53/udp</tt>.
+   */
+  private List<String> ports;
+
+  /**
+   * Environment variables to set in the container.
+   */
+  private Map<String, String> env;
+
+  /**
+   * The command to run instead of the default command of the image.
+   */
+  private List<String> command;
+
+  /**
+   * A regular expression that a line of the container's output has to match before the
+   * container counts as ready.
+   */
+  private String waitForLog;
+
+  /**
+   * A published container port that has to accept TCP connections before the container counts
+   * as ready.
+   */
+  private String waitForPort;
+
+  String getName() {
+    return name;
+  }
+
+  String getImage() {
+    return image;
+  }
+
+  List<String> getPorts() {
+    return ports == null ? Collections.<String>emptyList() : ports;
+  }
+
+  Map<String, String> getEnv() {
+    return env == null ? Collections.<String, String>emptyMap() : env;
+  }
+
+  List<String> getCommand() {
+    return command == null ? Collections.<String>emptyList() : command;
+  }
+
+  String getWaitForLog() {
+    return waitForLog;
+  }
+
+  String getWaitForPort() {
+    return waitForPort;
+  }
+}
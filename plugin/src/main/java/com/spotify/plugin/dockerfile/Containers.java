@@ -0,0 +1,149 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.ListContainersParam;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.NetworkNotFoundException;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.NetworkConfig;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The containers that the <tt>start</tt> goal runs for a project, found by their labels.
+ */
+final class Containers {
+
+  /**
+   * The label holding <tt>groupId:artifactId</tt> of the project that started a container.
+   */
+  static final String PROJECT_LABEL = "com.spotify.dockerfile.container.project";
+
+  /**
+   * The label holding the name of a container within its project.
+   */
+  static final String NAME_LABEL = "com.spotify.dockerfile.container.name";
+
+  /**
+   * The label holding a hash of the image ID and configuration a container was created with.
+   */
+  static final String CONFIG_LABEL = "com.spotify.dockerfile.container.config";
+
+  /**
+   * How long to wait for a container to stop before killing it, in seconds.
+   */
+  private static final int STOP_TIMEOUT = 10;
+
+  private Containers() {
+  }
+
+  /**
+   * Lists the containers of a project, whether they are running or not.
+   */
+  @Nonnull
+  static List<Container> list(@Nonnull DockerClient dockerClient, @Nonnull String coordinates)
+      throws DockerException, InterruptedException {
+    return dockerClient.listContainers(ListContainersParam.allContainers(),
+        ListContainersParam.withLabel(PROJECT_LABEL, coordinates));
+  }
+
+  /**
+   * Returns the name of the network that the containers of a project are attached to.  On it,
+   * each container can reach the others by their names.
+   */
+  @Nonnull
+  static String network(@Nonnull String coordinates) {
+    return "dockerfile-" + coordinates.replace(':', '_');
+  }
+
+  /**
+   * Creates the network of a project, unless it exists already.
+   */
+  static void createNetwork(@Nonnull DockerClient dockerClient,
+                            @Nonnull Log log,
+                            @Nonnull String coordinates)
+      throws DockerException, InterruptedException {
+    final String network = network(coordinates);
+    try {
+      dockerClient.inspectNetwork(network);
+      return;
+    } catch (NetworkNotFoundException e) {
+      log.info(MessageFormat.format("Creating network {0}", network));
+    }
+    dockerClient.createNetwork(NetworkConfig.builder()
+        .name(network)
+        .labels(Collections.singletonMap(PROJECT_LABEL, coordinates))
+        .checkDuplicate(true)
+        .build());
+  }
+
+  /**
+   * Removes the network of a project, unless it is already gone.
+   */
+  static void removeNetwork(@Nonnull DockerClient dockerClient,
+                            @Nonnull Log log,
+                            @Nonnull String coordinates)
+      throws DockerException, InterruptedException {
+    final String network = network(coordinates);
+    try {
+      dockerClient.removeNetwork(network);
+      log.info(MessageFormat.format("Removed network {0}", network));
+    } catch (NetworkNotFoundException e) {
+      log.debug(MessageFormat.format("Network {0} is already gone", network));
+    }
+  }
+
+  /**
+   * Stops and removes a container, unless it is already gone.
+   */
+  static void remove(@Nonnull DockerClient dockerClient,
+                     @Nonnull Log log,
+                     @Nonnull Container container)
+      throws DockerException, InterruptedException {
+    remove(dockerClient, log,
+        container.labels() == null ? null : container.labels().get(NAME_LABEL),
+        container.id(), container.state());
+  }
+
+  static void remove(@Nonnull DockerClient dockerClient,
+                     @Nonnull Log log,
+                     @Nullable String name,
+                     @Nonnull String id,
+                     @Nullable String state)
+      throws DockerException, InterruptedException {
+    log.info(MessageFormat.format("Removing container {0} ({1})", name, id));
+    try {
+      if ("running".equals(state)) {
+        dockerClient.stopContainer(id, STOP_TIMEOUT);
+      }
+      dockerClient.removeContainer(id);
+    } catch (ContainerNotFoundException e) {
+      log.debug(MessageFormat.format("Container {0} is already gone", id));
+    }
+  }
+}
@@ -0,0 +1,372 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An index of the files in a Docker build context, as they would be sent to the daemon, with a
+ * content digest per file.  The index can be refreshed cheaply: files whose size and modification
+ * time are unchanged keep their previously computed digest.
+ */
+final class ContextIndex {
+
+  private static final String DOCKERIGNORE = ".dockerignore";
+
+  static final class Entry {
+
+    private final long size;
+    private final long lastModified;
+    private final String digest;
+
+    Entry(long size, long lastModified, @Nonnull String digest) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.digest = digest;
+    }
+
+    @Nonnull
+    String digest() {
+      return digest;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      final Entry entry = (Entry) o;
+      return size == entry.size && digest.equals(entry.digest);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(size, digest);
+    }
+  }
+
+  private final Path root;
+  private final SortedMap<String, Entry> entries;
+
+  private ContextIndex(@Nonnull Path root, @Nonnull SortedMap<String, Entry> entries) {
+    this.root = root;
+    this.entries = Collections.unmodifiableSortedMap(entries);
+  }
+
+  @Nonnull
+  Path root() {
+    return root;
+  }
+
+  /**
+   * The entries of this index, keyed by their path relative to the context root, using
+   * <tt>/</tt> as the separator.
+   */
+  @Nonnull
+  SortedMap<String, Entry> entries() {
+    return entries;
+  }
+
+  /**
+   * A digest of the whole context: the paths, types, permissions and contents of all files.
+   */
+  @Nonnull
+  String digest() {
+    final Hasher hasher = Hashing.sha256().newHasher();
+    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+      hasher.putString(entry.getKey(), StandardCharsets.UTF_8);
+      hasher.putByte((byte) 0);
+      hasher.putString(entry.getValue().digest(), StandardCharsets.UTF_8);
+      hasher.putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Scans a build context.
+   *
+   * @param root     the context directory
+   * @param excludes absolute paths to leave out in addition to the <tt>.dockerignore</tt> rules,
+   *                 typically files that the plugin itself writes
+   * @param previous a previous index of the same context whose digests may be reused, or null
+   */
+  @Nonnull
+  static ContextIndex scan(@Nonnull Path root,
+                           @Nonnull Collection<Path> excludes,
+                           @Nullable ContextIndex previous) throws IOException {
+    final Path normalizedRoot = root.toAbsolutePath().normalize();
+    final List<Path> normalizedExcludes = new ArrayList<>();
+    for (Path exclude : excludes) {
+      normalizedExcludes.add(exclude.toAbsolutePath().normalize());
+    }
+
+    final DockerIgnore dockerIgnore = DockerIgnore.read(normalizedRoot.resolve(DOCKERIGNORE));
+    final SortedMap<String, Entry> entries = new TreeMap<>();
+    final Map<String, Entry> previousEntries =
+        previous == null ? Collections.<String, Entry>emptyMap() : previous.entries;
+
+    Files.walkFileTree(normalizedRoot, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        if (dir.equals(normalizedRoot)) {
+          return FileVisitResult.CONTINUE;
+        }
+        if (isExcluded(dir)) {
+          // An exception pattern may still include files below an ignored directory
+          return dockerIgnore.hasExceptions() && !isExplicitlyExcluded(dir)
+                 ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+        }
+        entries.put(relative(dir) + "/", new Entry(0, 0, "dir"));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        if (isExcluded(file)) {
+          return FileVisitResult.CONTINUE;
+        }
+        final String relative = relative(file);
+        final long lastModified = attrs.lastModifiedTime().toMillis();
+        final Entry old = previousEntries.get(relative);
+        if (old != null && old.size == attrs.size() && old.lastModified == lastModified) {
+          entries.put(relative, old);
+        } else if (attrs.isSymbolicLink()) {
+          entries.put(relative, new Entry(0, lastModified,
+              "link:" + Files.readSymbolicLink(file)));
+        } else {
+          entries.put(relative, new Entry(attrs.size(), lastModified,
+              (Files.isExecutable(file) ? "x:" : "") + digestOf(file)));
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      private boolean isExcluded(Path path) {
+        if (isExplicitlyExcluded(path)) {
+          return true;
+        }
+        final String relative = relative(path);
+        // .dockerignore itself is always sent to the daemon, even if it ignores itself
+        return !DOCKERIGNORE.equals(relative) && dockerIgnore.isIgnored(relative);
+      }
+
+      private boolean isExplicitlyExcluded(Path path) {
+        for (Path exclude : normalizedExcludes) {
+          if (path.startsWith(exclude)) {
+            return true;
+          }
+        }
+        return false;
+      }
+
+      private String relative(Path path) {
+        return normalizedRoot.relativize(path).toString().replace('\\', '/');
+      }
+    });
+
+    return new ContextIndex(normalizedRoot, entries);
+  }
+
+  @Nonnull
+  private static String digestOf(@Nonnull Path file) throws IOException {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    final byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = Files.newInputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return BaseEncoding.base16().lowerCase().encode(digest.digest());
+  }
+
+  /**
+   * The <tt>.dockerignore</tt> rules, matched the way Docker matches them: patterns are relative
+   * to the context root, <tt>*</tt> and <tt>?</tt> don't match <tt>/</tt>, <tt>**</tt> matches any
+   * number of directories (including none), and <tt>!</tt> marks exceptions.  The last matching
+   * pattern wins, and a path is also matched when one of its parent directories is.
+   */
+  static final class DockerIgnore {
+
+    private final List<Pattern> patterns;
+    private final List<Boolean> exceptions;
+
+    private DockerIgnore(List<Pattern> patterns, List<Boolean> exceptions) {
+      this.patterns = patterns;
+      this.exceptions = exceptions;
+    }
+
+    @Nonnull
+    static DockerIgnore read(@Nonnull Path file) throws IOException {
+      if (!Files.isRegularFile(file)) {
+        return parse(Collections.<String>emptyList());
+      }
+      try {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Could not read " + file + ": " + e.getMessage(), e);
+      }
+    }
+
+    @Nonnull
+    static DockerIgnore parse(@Nonnull List<String> lines) {
+      final List<Pattern> patterns = new ArrayList<>();
+      final List<Boolean> exceptions = new ArrayList<>();
+      for (String line : lines) {
+        String pattern = line.trim();
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+          continue;
+        }
+        final boolean exception = pattern.startsWith("!");
+        if (exception) {
+          pattern = pattern.substring(1).trim();
+        }
+        pattern = clean(pattern);
+        if (pattern.isEmpty()) {
+          continue;
+        }
+        patterns.add(compile(pattern));
+        exceptions.add(exception);
+      }
+      return new DockerIgnore(patterns, exceptions);
+    }
+
+    boolean hasExceptions() {
+      return exceptions.contains(true);
+    }
+
+    boolean isIgnored(@Nonnull String relativePath) {
+      boolean ignored = false;
+      for (int i = 0; i < patterns.size(); i++) {
+        if (patterns.get(i).matcher(relativePath).matches()) {
+          ignored = !exceptions.get(i);
+        }
+      }
+      return ignored;
+    }
+
+    /**
+     * Normalizes a pattern like Go's <tt>filepath.Clean</tt>, without its leading <tt>/</tt>.
+     */
+    @Nonnull
+    private static String clean(@Nonnull String pattern) {
+      final Deque<String> segments = new ArrayDeque<>();
+      for (String segment : pattern.split("/")) {
+        if (segment.isEmpty() || segment.equals(".")) {
+          continue;
+        }
+        if (segment.equals("..") && !segments.isEmpty() && !segments.peekLast().equals("..")) {
+          segments.removeLast();
+        } else {
+          segments.addLast(segment);
+        }
+      }
+      final StringBuilder cleaned = new StringBuilder();
+      for (String segment : segments) {
+        cleaned.append(cleaned.length() == 0 ? "" : "/").append(segment);
+      }
+      return cleaned.toString();
+    }
+
+    /**
+     * Translates a pattern into a regular expression, following Docker's
+     * <tt>fileutils.Matches</tt>.
+     */
+    @Nonnull
+    private static Pattern compile(@Nonnull String pattern) {
+      final StringBuilder regex = new StringBuilder("^");
+      for (int i = 0; i < pattern.length(); i++) {
+        final char c = pattern.charAt(i);
+        if (c == '*') {
+          if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+            i++;
+            // "**/" is the same as "**"
+            if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '/') {
+              i++;
+            }
+            regex.append(i + 1 == pattern.length() ? ".*" : "(.*/)?");
+          } else {
+            regex.append("[^/]*");
+          }
+        } else if (c == '?') {
+          regex.append("[^/]");
+        } else if (c == '\\') {
+          // Escapes the next character, or stands for itself at the end of the pattern
+          appendLiteral(regex, i + 1 < pattern.length() ? pattern.charAt(++i) : c);
+        } else if (c == '[' || c == ']' || c == '-'
+                   || (c == '^' && i > 0 && pattern.charAt(i - 1) == '[')) {
+          // Character classes are passed through
+          regex.append(c);
+        } else {
+          appendLiteral(regex, c);
+        }
+      }
+      // Matching a directory matches everything below it
+      regex.append("(/.*)?$");
+      try {
+        return Pattern.compile(regex.toString());
+      } catch (PatternSyntaxException e) {
+        throw new IllegalArgumentException("Illegal exclusion pattern: " + pattern, e);
+      }
+    }
+
+    private static void appendLiteral(@Nonnull StringBuilder regex, char c) {
+      if (!Character.isLetterOrDigit(c)) {
+        // Any other character is taken literally when preceded by a backslash
+        regex.append('\\');
+      }
+      regex.append(c);
+    }
+  }
+}
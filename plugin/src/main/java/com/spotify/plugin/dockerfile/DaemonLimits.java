@@ -0,0 +1,167 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.plugin.dockerfile.extension.DaemonSlots;
+import com.spotify.plugin.dockerfile.progress.ProgressEvent.Operation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Limits on how many builds, pulls and pushes the goal executions of a session run against the
+ * daemon at the same time.  With many reactor threads, running every operation at once makes the
+ * daemon compete with itself for CPU and disk, so operations past the limit wait for a slot.  The
+ * slots are shared with the pre-pulls of the extension (see {@link DaemonSlots}).
+ */
+final class DaemonLimits {
+
+  private final DaemonSlots slots;
+
+  DaemonLimits() {
+    this(new DaemonSlots());
+  }
+
+  private DaemonLimits(@Nonnull DaemonSlots slots) {
+    this.slots = slots;
+  }
+
+  @Nonnull
+  static DaemonLimits forSession(@Nonnull MavenSession session) {
+    return new DaemonLimits(DaemonSlots.forSession(session.getRepositorySession()));
+  }
+
+  /**
+   * Returns a client that waits for a slot before each build, pull or push.
+   *
+   * @param limits the maximum number of concurrent operations of each kind; operations that are
+   *               missing or not positive follow the limits that other modules set, if any.  When
+   *               modules configure different limits, the smallest one applies to the whole
+   *               session.
+   */
+  @Nonnull
+  DockerClient limit(@Nonnull DockerClient client,
+                     @Nonnull Map<Operation, Integer> limits,
+                     @Nonnull Log log) {
+    for (Map.Entry<Operation, Integer> limit : limits.entrySet()) {
+      if (limit.getValue() != null && limit.getValue() > 0) {
+        final String operation = name(limit.getKey());
+        final int previous = slots.limit(operation, limit.getValue());
+        if (previous > 0 && previous != limit.getValue()) {
+          log.warn(MessageFormat.format(
+              "Modules limit concurrent {0}s differently ({1} and {2}); allowing {3} at a time",
+              operation, previous, limit.getValue(), Math.min(previous, limit.getValue())));
+        }
+      }
+    }
+    // Wrapped even without limits of its own, since other modules may set some later
+    return (DockerClient) Proxy.newProxyInstance(DockerClient.class.getClassLoader(),
+        new Class<?>[] {DockerClient.class}, new Handler(client, slots, log));
+  }
+
+  @Nullable
+  static Operation operation(@Nonnull Method method) {
+    if (method.getDeclaringClass() != DockerClient.class) {
+      return null;
+    }
+    switch (method.getName()) {
+      case "build":
+        return Operation.BUILD;
+      case "pull":
+        return Operation.PULL;
+      case "push":
+        return Operation.PUSH;
+      default:
+        return null;
+    }
+  }
+
+  @Nonnull
+  private static String name(@Nonnull Operation operation) {
+    return operation.name().toLowerCase(Locale.ROOT);
+  }
+
+  private static final class Handler implements InvocationHandler {
+
+    private final DockerClient delegate;
+    private final DaemonSlots slots;
+    private final Log log;
+
+    Handler(@Nonnull DockerClient delegate, @Nonnull DaemonSlots slots, @Nonnull Log log) {
+      this.delegate = delegate;
+      this.slots = slots;
+      this.log = log;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+        switch (method.getName()) {
+          case "equals":
+            return proxy == args[0];
+          case "hashCode":
+            return System.identityHashCode(proxy);
+          default:
+            return "DaemonLimits(" + delegate + ")";
+        }
+      }
+
+      final Operation operation = operation(method);
+      final Semaphore semaphore = operation == null ? null : slots.get(name(operation));
+      if (semaphore == null) {
+        return call(method, args);
+      }
+
+      if (!semaphore.tryAcquire()) {
+        final long start = System.nanoTime();
+        semaphore.acquire();
+        log.info(MessageFormat.format(
+            "Waited {0} ms for the daemon to run a {1} ({2} at a time)",
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), name(operation),
+            slots.limit(name(operation))));
+      }
+      try {
+        return call(method, args);
+      } finally {
+        semaphore.release();
+      }
+    }
+
+    private Object call(@Nonnull Method method, Object[] args) throws Throwable {
+      try {
+        return method.invoke(delegate, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+}
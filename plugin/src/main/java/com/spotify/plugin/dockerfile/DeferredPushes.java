@@ -0,0 +1,315 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.ProgressHandler;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import com.spotify.plugin.dockerfile.progress.ProgressEvent;
+import com.spotify.plugin.dockerfile.progress.ProgressListener;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.lifecycle.DefaultLifecycles;
+import org.apache.maven.lifecycle.Lifecycle;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Pushes that are deferred until every execution of a pushing goal in the reactor has run, like
+ * the <tt>deployAtEnd</tt> option of the Maven Deploy Plugin.  One instance is shared by all
+ * modules of a session through the data of the repository session.
+ */
+final class DeferredPushes {
+
+  private static final String KEY = DeferredPushes.class.getName();
+  private static final String PLUGIN_KEY = "com.spotify:dockerfile-maven-plugin";
+  private static final String PLUGIN_PREFIX = "dockerfile";
+
+  private final Set<String> expected;
+  private final Set<String> arrived = new HashSet<>();
+  private final Set<String> images = new LinkedHashSet<>();
+
+  DeferredPushes(@Nonnull Set<String> expected) {
+    this.expected = expected;
+  }
+
+  /**
+   * Returns the deferred pushes of a session, creating them if this is the first execution that
+   * asks for them.
+   *
+   * @param goal the goal whose executions to wait for
+   * @param defaultPhase the phase the goal is bound to by default
+   */
+  @Nonnull
+  static DeferredPushes forSession(@Nonnull MavenSession session,
+                                   @Nonnull DefaultLifecycles lifecycles,
+                                   @Nonnull String goal,
+                                   @Nonnull String defaultPhase)
+      throws MojoExecutionException {
+    final SessionData data = session.getRepositorySession().getData();
+    Object pushes = data.get(KEY);
+    if (pushes == null) {
+      final DeferredPushes created =
+          new DeferredPushes(expectedExecutions(session, lifecycles, goal, defaultPhase));
+      // Another module may have got there first in a parallel build
+      pushes = data.set(KEY, null, created) ? created : data.get(KEY);
+    }
+    if (!(pushes instanceof DeferredPushes)) {
+      throw new MojoExecutionException(
+          "pushAtEnd requires all modules to use the same version of the dockerfile plugin");
+    }
+    return (DeferredPushes) pushes;
+  }
+
+  /**
+   * Records that an execution has run, along with the images that it wants pushed, if any.
+   *
+   * @return all images to push if this was the last execution to wait for, or else null
+   */
+  @Nullable
+  synchronized List<String> arrive(@Nonnull String execution,
+                                   @Nonnull Collection<String> toPush) {
+    expected.add(execution);
+    arrived.add(execution);
+    images.addAll(toPush);
+    if (!arrived.containsAll(expected)) {
+      return null;
+    }
+
+    final List<String> ready = new ArrayList<>(images);
+    images.clear();
+    return ready;
+  }
+
+  /**
+   * Pushes images concurrently, with at most <tt>threadsPerRegistry</tt> pushes to the same
+   * registry at a time.  All images are checked to exist before the first push starts.
+   */
+  static void pushAll(@Nonnull final DockerClient dockerClient,
+                      @Nonnull final Log log,
+                      final boolean verbose,
+                      @Nonnull List<String> images,
+                      int threadsPerRegistry)
+      throws MojoExecutionException, MojoFailureException {
+    final List<String> missing = new ArrayList<>();
+    for (String image : images) {
+      try {
+        dockerClient.inspectImage(image);
+      } catch (ImageNotFoundException e) {
+        missing.add(image);
+      } catch (DockerException | InterruptedException e) {
+        throw new MojoExecutionException("Could not inspect image " + image, e);
+      }
+    }
+    if (!missing.isEmpty()) {
+      throw new MojoFailureException(
+          "Not pushing any images; images not found locally: " + missing);
+    }
+
+    final Map<String, List<String>> byRegistry = new LinkedHashMap<>();
+    for (String image : images) {
+      final String registry = registry(image);
+      if (!byRegistry.containsKey(registry)) {
+        byRegistry.put(registry, new ArrayList<String>());
+      }
+      byRegistry.get(registry).add(image);
+    }
+
+    log.info(MessageFormat.format("Pushing {0} image(s) to {1} registr(y/ies)", images.size(),
+        byRegistry.size()));
+    final long start = System.nanoTime();
+
+    final List<ExecutorService> executors = new ArrayList<>();
+    final Map<String, Future<Void>> pushes = new LinkedHashMap<>();
+    try {
+      for (Map.Entry<String, List<String>> registry : byRegistry.entrySet()) {
+        final ExecutorService executor = DockerThreads.newFixedPool(
+            "dockerfile-push-" + registry.getKey(),
+            Math.min(threadsPerRegistry, registry.getValue().size()));
+        executors.add(executor);
+        for (final String image : registry.getValue()) {
+          pushes.put(image, executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              log.info(MessageFormat.format("Pushing {0}", image));
+              dockerClient.push(image, progressHandler(log, verbose, image));
+              log.info(MessageFormat.format("Pushed {0}", image));
+              return null;
+            }
+          }));
+        }
+      }
+
+      final List<String> failures = new ArrayList<>();
+      for (Map.Entry<String, Future<Void>> push : pushes.entrySet()) {
+        try {
+          push.getValue().get();
+        } catch (ExecutionException e) {
+          failures.add(push.getKey() + ": " + e.getCause().getMessage());
+        }
+      }
+
+      log.info(MessageFormat.format("Pushed {0} of {1} image(s) in {2} s",
+          images.size() - failures.size(), images.size(),
+          (System.nanoTime() - start) / 1000000000L));
+      if (!failures.isEmpty()) {
+        for (String failure : failures) {
+          log.error("Could not push " + failure);
+        }
+        throw new MojoExecutionException(
+            MessageFormat.format("Could not push {0} image(s): {1}", failures.size(), failures));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while pushing images", e);
+    } finally {
+      for (ExecutorService executor : executors) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * Returns the registry that an image is pushed to.
+   */
+  @Nonnull
+  static String registry(@Nonnull String image) {
+    final int slash = image.indexOf('/');
+    if (slash < 0) {
+      return "docker.io";
+    }
+    final String host = image.substring(0, slash);
+    if (host.contains(".") || host.contains(":") || "localhost".equals(host)) {
+      return host;
+    }
+    return "docker.io";
+  }
+
+  @Nonnull
+  private static ProgressHandler progressHandler(@Nonnull final Log log,
+                                                 final boolean verbose,
+                                                 @Nonnull final String image) {
+    // Concurrent pushes would interleave the usual per-layer output, so it is only shown when
+    // verbose, prefixed with the image
+    return new ProgressEvents(log, ProgressEvent.Operation.PUSH, image, new ProgressListener() {
+      @Override
+      public void onEvent(ProgressEvent event) {
+        if (!verbose) {
+          return;
+        }
+        if (event instanceof ProgressEvent.LayerProgress) {
+          final ProgressEvent.LayerProgress progress = (ProgressEvent.LayerProgress) event;
+          log.info(MessageFormat.format("{0}: {1}{2}", image,
+              progress.getLayerId() == null ? "" : progress.getLayerId() + " ",
+              progress.getStatus()));
+        } else if (event instanceof ProgressEvent.Output) {
+          log.info(MessageFormat.format("{0}: {1}", image,
+              ((ProgressEvent.Output) event).getLine()));
+        }
+      }
+    });
+  }
+
+  /**
+   * Finds the executions of a goal of this plugin that the session will run, as
+   * <tt>projectId@executionId</tt>: the executions configured in the projects whose phase is
+   * reached by the requested phases, and the goal itself if it was requested directly.
+   */
+  @Nonnull
+  static Set<String> expectedExecutions(@Nonnull MavenSession session,
+                                                @Nonnull DefaultLifecycles lifecycles,
+                                                @Nonnull String goal,
+                                                @Nonnull String defaultPhase) {
+    final Set<String> reachedPhases = new HashSet<>();
+    final Set<String> cliExecutions = new HashSet<>();
+    for (String requested : session.getGoals()) {
+      boolean isPhase = false;
+      for (Lifecycle lifecycle : lifecycles.getLifeCycles()) {
+        final int index = lifecycle.getPhases().indexOf(requested);
+        if (index >= 0) {
+          reachedPhases.addAll(lifecycle.getPhases().subList(0, index + 1));
+          isPhase = true;
+        }
+      }
+      if (!isPhase) {
+        final String executionId = cliExecutionId(requested, goal);
+        if (executionId != null) {
+          cliExecutions.add(executionId);
+        }
+      }
+    }
+
+    final Set<String> expected = new HashSet<>();
+    for (MavenProject project : session.getProjects()) {
+      for (String executionId : cliExecutions) {
+        expected.add(project.getId() + "@" + executionId);
+      }
+
+      final Plugin plugin = project.getPlugin(PLUGIN_KEY);
+      if (plugin == null) {
+        continue;
+      }
+      for (PluginExecution execution : plugin.getExecutions()) {
+        final String phase = execution.getPhase() == null ? defaultPhase : execution.getPhase();
+        if (execution.getGoals().contains(goal) && reachedPhases.contains(phase)) {
+          expected.add(project.getId() + "@" + execution.getId());
+        }
+      }
+    }
+    return expected;
+  }
+
+  @Nullable
+  private static String cliExecutionId(@Nonnull String requested, @Nonnull String goal) {
+    String executionId = "default-cli";
+    String invocation = requested;
+    final int at = requested.indexOf('@');
+    if (at >= 0) {
+      executionId = requested.substring(at + 1);
+      invocation = requested.substring(0, at);
+    }
+
+    final String[] parts = invocation.split(":");
+    final boolean ours = parts.length == 2 && PLUGIN_PREFIX.equals(parts[0])
+        || parts.length >= 3 && PLUGIN_KEY.equals(parts[0] + ":" + parts[1]);
+    return ours && goal.equals(parts[parts.length - 1]) ? executionId : null;
+  }
+}
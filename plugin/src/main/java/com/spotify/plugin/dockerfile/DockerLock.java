@@ -0,0 +1,163 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.google.common.base.Joiner;
+import com.spotify.plugin.dockerfile.extension.DockerfileParser.Instruction;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A <tt>docker.lock</tt> file, which pins the base images of a Dockerfile to the digests they had
+ * when the <tt>lock</tt> goal ran.  Each line has the form <tt>image:tag=sha256:...</tt>; lines
+ * starting with <tt>#</tt> are comments.
+ *
+ * <p>Builds use the digests through a copy of the Dockerfile whose <tt>FROM</tt> instructions
+ * name the pinned images by digest, so that tags on the daemon, which other builds use too, are
+ * never changed.
+ */
+final class DockerLock {
+
+  private DockerLock() {
+  }
+
+  /**
+   * Reads the digests of a lock file, by normalized base image name.
+   */
+  @Nonnull
+  static Map<String, String> read(@Nonnull Path file) throws IOException {
+    final Map<String, String> digests = new TreeMap<>();
+    int number = 0;
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      number++;
+      final String trimmed = line.trim();
+      if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+        continue;
+      }
+      final int separator = trimmed.lastIndexOf('=');
+      if (separator <= 0 || separator == trimmed.length() - 1) {
+        throw new IOException(
+            "Expected image=digest on line " + number + " of " + file + ": " + line);
+      }
+      digests.put(trimmed.substring(0, separator).trim(),
+          trimmed.substring(separator + 1).trim());
+    }
+    return digests;
+  }
+
+  static void write(@Nonnull Path file, @Nonnull Map<String, String> digests) throws IOException {
+    final List<String> lines = new ArrayList<>();
+    lines.add("# Base image digests, written by dockerfile:lock");
+    for (Map.Entry<String, String> digest : new TreeMap<>(digests).entrySet()) {
+      lines.add(digest.getKey() + "=" + digest.getValue());
+    }
+    Files.write(file, lines, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the name that refers to an image by digest, for example <tt>ubuntu@sha256:...</tt>
+   * for <tt>ubuntu:18.04</tt>.
+   */
+  @Nonnull
+  static String pinned(@Nonnull String image, @Nonnull String digest) {
+    final int tag = image.lastIndexOf(':');
+    final String repository = tag > image.lastIndexOf('/') ? image.substring(0, tag) : image;
+    return repository + "@" + digest;
+  }
+
+  /**
+   * Returns the Dockerfile that builds use instead of the given one, next to it so that it is part
+   * of the same build context.
+   */
+  @Nonnull
+  static Path lockedDockerfile(@Nonnull Path dockerfile) {
+    return dockerfile.resolveSibling("." + dockerfile.getFileName() + ".locked");
+  }
+
+  /**
+   * Rewrites the <tt>FROM</tt> instructions of a Dockerfile to name their base images by digest.
+   * Every other line is kept as it is, so that line numbers in build errors stay the same.
+   *
+   * @param content the Dockerfile
+   * @param baseImages the base image of each <tt>FROM</tt> instruction of the Dockerfile
+   * @param pinned the names that refer to base images by digest, by base image
+   * @return the rewritten Dockerfile, or null if none of its base images is pinned
+   */
+  @Nullable
+  static String rewrite(@Nonnull String content,
+                        @Nonnull Map<Instruction, String> baseImages,
+                        @Nonnull Map<String, String> pinned) {
+    final String[] lines = content.split("\r?\n", -1);
+    boolean changed = false;
+    for (Map.Entry<Instruction, String> from : baseImages.entrySet()) {
+      final String name = pinned.get(from.getValue());
+      if (name == null) {
+        continue;
+      }
+      final Instruction instruction = from.getKey();
+      final List<String> words =
+          new ArrayList<>(Arrays.asList(instruction.arguments().trim().split("\\s+")));
+      for (int i = 0; i < words.size(); i++) {
+        // Flags such as --platform come before the image
+        if (!words.get(i).startsWith("--")) {
+          words.set(i, name);
+          break;
+        }
+      }
+      lines[instruction.line() - 1] = "FROM " + Joiner.on(' ').join(words);
+      for (int line = instruction.line(); line < instruction.lastLine(); line++) {
+        lines[line] = "";
+      }
+      changed = true;
+    }
+    return changed ? Joiner.on('\n').join(lines) : null;
+  }
+
+  /**
+   * Replaces a file unless it already has the given content.  Builds of the same context write
+   * the same content, so concurrent builds only ever see a complete file.
+   */
+  static void writeIfChanged(@Nonnull Path file, @Nonnull String content) throws IOException {
+    final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+    if (Files.isRegularFile(file) && Arrays.equals(bytes, Files.readAllBytes(file))) {
+      return;
+    }
+    final Path temp = Files.createTempFile(file.getParent(), "." + file.getFileName(), ".tmp");
+    try {
+      Files.write(temp, bytes);
+      Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Threads for work that mostly waits on the Docker daemon or a registry, like pulls, pushes and
+ * loads.  These are virtual threads when the JDK running Maven has them, and daemon platform
+ * threads otherwise.  The plugin targets Java 8, so virtual threads are looked up reflectively.
+ */
+final class DockerThreads {
+
+  @Nullable
+  private static final Method OF_VIRTUAL = virtualThreadBuilder();
+
+  private DockerThreads() {
+  }
+
+  /**
+   * Returns an executor that runs at most <tt>threads</tt> tasks at a time.
+   */
+  @Nonnull
+  static ExecutorService newFixedPool(@Nonnull String name, int threads) {
+    return Executors.newFixedThreadPool(Math.max(1, threads), factory(name));
+  }
+
+  @Nonnull
+  static ThreadFactory factory(@Nonnull String name) {
+    if (OF_VIRTUAL != null) {
+      try {
+        final Object builder = OF_VIRTUAL.invoke(null);
+        final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+        final Object named = builderClass.getMethod("name", String.class, long.class)
+            .invoke(builder, name + "-", 0L);
+        return (ThreadFactory) builderClass.getMethod("factory").invoke(named);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        // Fall back to platform threads
+      }
+    }
+    return new ThreadFactoryBuilder().setDaemon(true).setNameFormat(name + "-%d").build();
+  }
+
+  @Nullable
+  private static Method virtualThreadBuilder() {
+    try {
+      return Thread.class.getMethod("ofVirtual");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.spotify.plugin.dockerfile.extension.DockerfileParser.Instruction;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Looks for Dockerfile patterns that defeat Docker's layer cache, so that slow builds are caught
+ * when the Dockerfile is changed instead of showing up as slowly growing build times.
+ */
+final class DockerfileLinter {
+
+  private DockerfileLinter() {
+  }
+
+  /**
+   * Lints a parsed Dockerfile.
+   *
+   * @param name             the name of the Dockerfile, used as a prefix in the messages
+   * @param instructions     the parsed instructions
+   * @param buildArgs        the build arguments that will be passed to the build
+   * @param volatileValues   values that change on every build, such as the build timestamp
+   * @return a human readable message per problem found
+   */
+  @Nonnull
+  static List<String> lint(@Nonnull String name,
+                           @Nonnull List<Instruction> instructions,
+                           @Nullable Map<String, String> buildArgs,
+                           @Nonnull Collection<String> volatileValues) {
+    final List<String> problems = new ArrayList<>();
+
+    for (int i = 0; i < instructions.size(); i++) {
+      final Instruction instruction = instructions.get(i);
+
+      if (instruction.is("ADD")) {
+        for (String source : sources(instruction)) {
+          if (isRemoteUrl(source)) {
+            problems.add(MessageFormat.format(
+                "{0}:{1}: ADD of remote URL {2} is downloaded again on every build and can not "
+                + "be cached reliably; download it in a RUN step with a pinned checksum instead",
+                name, instruction.line(), source));
+          }
+        }
+      }
+
+      if ((instruction.is("COPY") || instruction.is("ADD"))
+          && instruction.flag("from") == null
+          && copiesWholeContext(instruction)) {
+        final Instruction run = nextRunInStage(instructions, i);
+        if (run != null) {
+          problems.add(MessageFormat.format(
+              "{0}:{1}: {2} copies the whole build context before the RUN step at line {3}; "
+              + "any source change invalidates the cache of every following step. Copy the "
+              + "files needed to install dependencies first, and the rest of the sources last",
+              name, instruction.line(), instruction, run.line()));
+        }
+      }
+
+      if (instruction.is("ARG") && buildArgs != null && !isBeforeFirstStage(instructions, i)) {
+        final String argName = argName(instruction);
+        final String value = buildArgs.get(argName);
+        if (value != null && volatileValues.contains(value)) {
+          final Instruction run = nextRunInStage(instructions, i);
+          if (run != null) {
+            problems.add(MessageFormat.format(
+                "{0}:{1}: build argument {2} changes on every build, which invalidates the "
+                + "cache from the RUN step at line {3} onwards; declare it as late as possible",
+                name, instruction.line(), argName, run.line()));
+          }
+        }
+      }
+    }
+
+    return Collections.unmodifiableList(problems);
+  }
+
+  @Nonnull
+  private static List<String> sources(@Nonnull Instruction instruction) {
+    final List<String> words = instruction.words();
+    if (words.size() < 2) {
+      return Collections.emptyList();
+    }
+    return words.subList(0, words.size() - 1);
+  }
+
+  private static boolean copiesWholeContext(@Nonnull Instruction instruction) {
+    for (String source : sources(instruction)) {
+      if (".".equals(source) || "./".equals(source) || "*".equals(source)
+          || "./*".equals(source)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isRemoteUrl(@Nonnull String source) {
+    return source.startsWith("http://") || source.startsWith("https://");
+  }
+
+  @Nullable
+  private static Instruction nextRunInStage(@Nonnull List<Instruction> instructions, int index) {
+    for (int i = index + 1; i < instructions.size(); i++) {
+      final Instruction instruction = instructions.get(i);
+      if (instruction.is("FROM")) {
+        return null;
+      }
+      if (instruction.is("RUN")) {
+        return instruction;
+      }
+    }
+    return null;
+  }
+
+  private static boolean isBeforeFirstStage(@Nonnull List<Instruction> instructions, int index) {
+    for (int i = 0; i < index; i++) {
+      if (instructions.get(i).is("FROM")) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Nonnull
+  private static String argName(@Nonnull Instruction instruction) {
+    final String arguments = instruction.arguments();
+    final int equals = arguments.indexOf('=');
+    return (equals < 0 ? arguments : arguments.substring(0, equals)).trim();
+  }
+}
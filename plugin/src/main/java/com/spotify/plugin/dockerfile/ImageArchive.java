@@ -0,0 +1,97 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Image archive artifacts: gzipped <tt>docker save</tt> output, with the ID of the saved image
+ * recorded as the comment in the gzip header so that consumers can find out which image an
+ * archive contains without decompressing it.
+ */
+final class ImageArchive {
+
+  /**
+   * The artifact type (and default classifier) of image archives, as registered by the extension.
+   */
+  static final String TYPE = "docker-image";
+
+  static final String EXTENSION = "tar.gz";
+
+  private static final int GZIP_MAGIC = 0x8b1f;
+  private static final int FLAG_EXTRA = 0x04;
+  private static final int FLAG_NAME = 0x08;
+  private static final int FLAG_COMMENT = 0x10;
+
+  private ImageArchive() {
+  }
+
+  /**
+   * Reads the image ID recorded in the header of an image archive.
+   *
+   * @return the image ID, or null if the archive does not record one
+   * @throws IOException if the stream is not in gzip format
+   */
+  @Nullable
+  static String readImageId(@Nonnull InputStream in) throws IOException {
+    final DataInputStream data = new DataInputStream(in);
+    final int magic = data.readUnsignedByte() | (data.readUnsignedByte() << 8);
+    if (magic != GZIP_MAGIC) {
+      throw new IOException("Not in gzip format");
+    }
+    data.readUnsignedByte(); // Compression method
+    final int flags = data.readUnsignedByte();
+    data.skipBytes(6); // Modification time, extra flags and OS
+
+    if ((flags & FLAG_EXTRA) != 0) {
+      final int length = data.readUnsignedByte() | (data.readUnsignedByte() << 8);
+      data.skipBytes(length);
+    }
+    if ((flags & FLAG_NAME) != 0) {
+      readZeroTerminated(data);
+    }
+    if ((flags & FLAG_COMMENT) == 0) {
+      return null;
+    }
+    final String comment = readZeroTerminated(data).trim();
+    return comment.isEmpty() ? null : comment;
+  }
+
+  @Nonnull
+  private static String readZeroTerminated(@Nonnull InputStream in) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != 0) {
+      if (b < 0) {
+        throw new EOFException("Unexpected end of gzip header");
+      }
+      bytes.write(b);
+    }
+    return new String(bytes.toByteArray(), StandardCharsets.ISO_8859_1);
+  }
+}
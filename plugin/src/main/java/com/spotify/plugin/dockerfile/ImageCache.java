@@ -0,0 +1,203 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.google.common.io.ByteStreams;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A directory of <tt>docker save</tt> archives keyed by build fingerprint.  It lets builds on a
+ * daemon that starts out empty (like ephemeral CI runners with a shared cache volume) load a
+ * previously built image instead of building it again.  The directory is bounded in size; the
+ * least recently used archives are evicted first.
+ */
+final class ImageCache {
+
+  private static final String ARCHIVE_SUFFIX = ".tar";
+  private static final String IMAGE_ID_SUFFIX = ".image-id";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final Path directory;
+  private final long maxSizeBytes;
+  private final Log log;
+
+  ImageCache(@Nonnull Path directory, long maxSizeBytes, @Nonnull Log log) {
+    this.directory = directory;
+    this.maxSizeBytes = maxSizeBytes;
+    this.log = log;
+  }
+
+  /**
+   * Makes the image with the given fingerprint available in the daemon, loading it from the cache
+   * if needed.
+   *
+   * @return the ID of the image, or null if the cache has no image for the fingerprint
+   */
+  @Nullable
+  String restore(@Nonnull DockerClient dockerClient, @Nonnull String fingerprint)
+      throws MojoExecutionException {
+    final Path archive = directory.resolve(fingerprint + ARCHIVE_SUFFIX);
+    final Path imageIdFile = directory.resolve(fingerprint + IMAGE_ID_SUFFIX);
+
+    try {
+      if (!Files.isRegularFile(imageIdFile)) {
+        return null;
+      }
+      final String imageId =
+          new String(Files.readAllBytes(imageIdFile), StandardCharsets.UTF_8).trim();
+
+      if (BuildMojo.imageExistLocally(dockerClient, imageId)) {
+        log.info(MessageFormat.format(
+            "Image {0} for build fingerprint {1} is already present", imageId, fingerprint));
+        touch(archive);
+        return imageId;
+      }
+
+      if (!Files.isRegularFile(archive)) {
+        return null;
+      }
+
+      log.info(MessageFormat.format("Loading image {0} from build cache {1}", imageId, archive));
+      try (InputStream in = Files.newInputStream(archive)) {
+        dockerClient.load(in);
+      }
+      if (!BuildMojo.imageExistLocally(dockerClient, imageId)) {
+        log.warn(MessageFormat.format(
+            "Build cache entry {0} did not contain image {1}; ignoring it", archive, imageId));
+        return null;
+      }
+      touch(archive);
+      return imageId;
+    } catch (IOException | DockerException e) {
+      log.warn(MessageFormat.format("Could not restore image from build cache {0}", archive), e);
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while restoring image from build cache", e);
+    }
+  }
+
+  /**
+   * Saves the given image into the cache under the given fingerprint, and evicts old entries to
+   * keep the cache within its size bound.
+   */
+  void store(@Nonnull DockerClient dockerClient, @Nonnull String fingerprint,
+             @Nonnull String imageId) throws MojoExecutionException {
+    final Path archive = directory.resolve(fingerprint + ARCHIVE_SUFFIX);
+    final Path imageIdFile = directory.resolve(fingerprint + IMAGE_ID_SUFFIX);
+
+    try {
+      Files.createDirectories(directory);
+      if (Files.isRegularFile(archive) && Files.isRegularFile(imageIdFile)) {
+        return;
+      }
+
+      log.info(MessageFormat.format("Saving image {0} into build cache {1}", imageId, archive));
+      // Write to temporary files first, so that concurrent builds never see partial entries
+      final Path tempArchive =
+          Files.createTempFile(directory, fingerprint, ARCHIVE_SUFFIX + TEMP_SUFFIX);
+      final Path tempImageId =
+          Files.createTempFile(directory, fingerprint, IMAGE_ID_SUFFIX + TEMP_SUFFIX);
+      try {
+        try (InputStream in = dockerClient.save(imageId);
+             OutputStream out = Files.newOutputStream(tempArchive)) {
+          ByteStreams.copy(in, out);
+        }
+        Files.write(tempImageId, (imageId + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(tempArchive, archive,
+            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tempImageId, imageIdFile,
+            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(tempArchive);
+        Files.deleteIfExists(tempImageId);
+      }
+
+      evict();
+    } catch (IOException | DockerException e) {
+      log.warn(MessageFormat.format("Could not save image into build cache {0}", archive), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while saving image into build cache", e);
+    }
+  }
+
+  private void evict() throws IOException {
+    final List<Path> archives = new ArrayList<>();
+    long totalSize = 0;
+    try (DirectoryStream<Path> entries =
+             Files.newDirectoryStream(directory, "*" + ARCHIVE_SUFFIX)) {
+      for (Path entry : entries) {
+        archives.add(entry);
+        totalSize += Files.size(entry);
+      }
+    }
+
+    Collections.sort(archives, new Comparator<Path>() {
+      @Override
+      public int compare(Path left, Path right) {
+        try {
+          return Files.getLastModifiedTime(left).compareTo(Files.getLastModifiedTime(right));
+        } catch (IOException e) {
+          return 0;
+        }
+      }
+    });
+
+    for (Path archive : archives) {
+      if (totalSize <= maxSizeBytes) {
+        break;
+      }
+      final long size = Files.size(archive);
+      final String name = archive.getFileName().toString();
+      final String fingerprint = name.substring(0, name.length() - ARCHIVE_SUFFIX.length());
+      log.info(MessageFormat.format("Evicting {0} from build cache", archive));
+      Files.deleteIfExists(archive);
+      Files.deleteIfExists(directory.resolve(fingerprint + IMAGE_ID_SUFFIX));
+      totalSize -= size;
+    }
+  }
+
+  private static void touch(@Nonnull Path file) throws IOException {
+    if (Files.exists(file)) {
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.spotify.docker.client.messages.ImageHistory;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The size of an image and of each of its layers, as written to <tt>image-size.json</tt> in the
+ * build directory after each build.
+ */
+final class ImageSizeReport {
+
+  static final String FILE_NAME = "image-size.json";
+
+  private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+  private static final double MEGABYTE = 1024 * 1024;
+
+  static final class Layer {
+    final String createdBy;
+    final long size;
+
+    Layer(@Nullable String createdBy, long size) {
+      this.createdBy = createdBy;
+      this.size = size;
+    }
+  }
+
+  final String imageId;
+  final long size;
+  /**
+   * The layers in the order they were built, i.e. starting with the base image.
+   */
+  final List<Layer> layers;
+
+  ImageSizeReport(@Nonnull String imageId, long size, @Nonnull List<Layer> layers) {
+    this.imageId = imageId;
+    this.size = size;
+    this.layers = layers;
+  }
+
+  @Nonnull
+  static ImageSizeReport of(@Nonnull String imageId,
+                            long size,
+                            @Nonnull List<ImageHistory> history) {
+    final List<Layer> layers = new ArrayList<>();
+    for (ImageHistory entry : history) {
+      layers.add(new Layer(entry.createdBy(), entry.size() == null ? 0 : entry.size()));
+    }
+    // The daemon lists the most recent layer first
+    Collections.reverse(layers);
+    return new ImageSizeReport(imageId, size, layers);
+  }
+
+  /**
+   * Reads a report, returning null if there is none.
+   */
+  @Nullable
+  static ImageSizeReport read(@Nonnull Path file) throws IOException {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      return GSON.fromJson(reader, ImageSizeReport.class);
+    } catch (JsonParseException e) {
+      throw new IOException("Could not parse image size report " + file, e);
+    }
+  }
+
+  void write(@Nonnull Path file) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      GSON.toJson(this, writer);
+    }
+  }
+
+  /**
+   * Compares this report with an earlier one.  Layers are compared by position, since the
+   * command that created a layer usually contains a checksum of the files it copied.
+   *
+   * @return descriptions of the growth past the given limits, in bytes
+   */
+  @Nonnull
+  List<String> regressions(@Nonnull ImageSizeReport baseline,
+                           long maxGrowth,
+                           long maxLayerGrowth) {
+    final List<String> regressions = new ArrayList<>();
+    if (size - baseline.size > maxGrowth) {
+      regressions.add(MessageFormat.format("Image grew by {0}, from {1} to {2}",
+          megabytes(size - baseline.size), megabytes(baseline.size), megabytes(size)));
+    }
+    for (int i = 0; i < layers.size(); i++) {
+      final Layer layer = layers.get(i);
+      final long previous = i < baseline.layers.size() ? baseline.layers.get(i).size : 0;
+      if (layer.size - previous > maxLayerGrowth) {
+        regressions.add(MessageFormat.format("Layer {0} grew by {1}, from {2} to {3}: {4}",
+            i + 1, megabytes(layer.size - previous), megabytes(previous),
+            megabytes(layer.size), layer.createdBy));
+      }
+    }
+    return regressions;
+  }
+
+  @Nonnull
+  static String megabytes(long bytes) {
+    return String.format(Locale.ROOT, "%.1f MB", bytes / MEGABYTE);
+  }
+}
@@ -0,0 +1,90 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * A Docker client that is only created when it is first used, so that goal executions that are
+ * skipped or only deal with metadata don't load the HTTP stack of the client or set up
+ * authentication.
+ */
+final class LazyDockerClient implements InvocationHandler {
+
+  private final SharedDockerClients.Factory factory;
+  private DockerClient delegate;
+
+  private LazyDockerClient(@Nonnull SharedDockerClients.Factory factory) {
+    this.factory = factory;
+  }
+
+  @Nonnull
+  static DockerClient of(@Nonnull SharedDockerClients.Factory factory) {
+    return (DockerClient) Proxy.newProxyInstance(DockerClient.class.getClassLoader(),
+        new Class<?>[] {DockerClient.class}, new LazyDockerClient(factory));
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (method.getDeclaringClass() == Object.class) {
+      switch (method.getName()) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        default:
+          return "LazyDockerClient(" + delegate + ")";
+      }
+    }
+
+    final DockerClient client;
+    synchronized (this) {
+      if (delegate == null && "close".equals(method.getName())) {
+        return null;
+      }
+      if (delegate == null) {
+        try {
+          delegate = factory.create();
+        } catch (MojoExecutionException e) {
+          if (Arrays.asList(method.getExceptionTypes()).contains(DockerException.class)) {
+            throw new DockerException(e.getMessage(), e);
+          }
+          throw new IllegalStateException(e.getMessage(), e);
+        }
+      }
+      client = delegate;
+    }
+
+    try {
+      return method.invoke(client, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.annotation.Nonnull;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Loads the image archives (<tt>docker-image</tt> artifacts, as attached by the <tt>save</tt>
+ * goal) that the project depends on into the Docker daemon.  Images that are already present are
+ * skipped without reading their archive.
+ */
+@Mojo(name = "load",
+    defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST,
+    requiresProject = true,
+    requiresDependencyResolution = ResolutionScope.TEST,
+    threadSafe = true)
+public class LoadMojo extends AbstractDockerMojo {
+
+  /**
+   * The maximum number of images to load at the same time.
+   */
+  @Parameter(defaultValue = "2", property = "dockerfile.load.threads")
+  private int loadThreads;
+
+  /**
+   * Disables the load goal; it becomes a no-op.
+   */
+  @Parameter(property = "dockerfile.load.skip", defaultValue = "false")
+  private boolean skipLoad;
+
+  @Override
+  protected void execute(final DockerClient dockerClient)
+      throws MojoExecutionException, MojoFailureException {
+    final Log log = getLog();
+
+    if (skipLoad) {
+      log.info("Skipping execution because 'dockerfile.load.skip' is set");
+      return;
+    }
+
+    final List<Artifact> archives = new ArrayList<>();
+    for (Artifact artifact : project.getArtifacts()) {
+      if (ImageArchive.TYPE.equals(artifact.getType()) && artifact.getFile() != null) {
+        archives.add(artifact);
+      }
+    }
+
+    if (archives.isEmpty()) {
+      log.info("No docker-image dependencies to load");
+      return;
+    }
+
+    final ExecutorService executor =
+        DockerThreads.newFixedPool("dockerfile-load", Math.min(loadThreads, archives.size()));
+    try {
+      final Map<Artifact, Future<Void>> loads = new LinkedHashMap<>();
+      for (final Artifact artifact : archives) {
+        loads.put(artifact, executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            load(dockerClient, log, artifact);
+            return null;
+          }
+        }));
+      }
+
+      for (Map.Entry<Artifact, Future<Void>> load : loads.entrySet()) {
+        try {
+          load.getValue().get();
+        } catch (ExecutionException e) {
+          throw new MojoExecutionException(
+              MessageFormat.format("Could not load image from {0}", load.getKey()), e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while loading images", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void load(@Nonnull DockerClient dockerClient,
+                           @Nonnull Log log,
+                           @Nonnull Artifact artifact)
+      throws IOException, DockerException, InterruptedException {
+    final File file = artifact.getFile();
+
+    final String imageId;
+    try (InputStream in = new FileInputStream(file)) {
+      imageId = ImageArchive.readImageId(in);
+    }
+
+    if (imageId != null && BuildMojo.imageExistLocally(dockerClient, imageId)) {
+      log.info(MessageFormat.format("Image {0} from {1} is already present", imageId, artifact));
+      return;
+    }
+
+    log.info(MessageFormat.format("Loading image {0} from {1}",
+        imageId == null ? "(unknown ID)" : imageId, artifact));
+    // The daemon decompresses gzipped archives itself, so the file is sent as is
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+      dockerClient.load(in);
+    }
+    log.info(MessageFormat.format("Loaded image from {0}", artifact));
+  }
+}
@@ -0,0 +1,85 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Resolves each base image of the Dockerfile to its current digest in the registry and writes the
+ * digests to the lock file.  Builds then use the pinned digests instead of asking the registry
+ * for newer images.  Run it again to update the base images.
+ */
+@Mojo(name = "lock",
+    requiresProject = true,
+    threadSafe = true)
+public class LockMojo extends BuildMojo {
+
+  /**
+   * Disables the lock goal; it becomes a no-op.
+   */
+  @Parameter(property = "dockerfile.lock.skip", defaultValue = "false")
+  private boolean skipLock;
+
+  @Override
+  public void execute(DockerClient dockerClient)
+      throws MojoExecutionException, MojoFailureException {
+    final Log log = getLog();
+
+    if (skipLock) {
+      log.info("Skipping execution because 'dockerfile.lock.skip' is set");
+      return;
+    }
+    requireOnline("resolve base image digests");
+
+    final Map<String, String> digests = new TreeMap<>();
+    for (String baseImage : baseImages()) {
+      if (baseImage.contains("@")) {
+        log.info(MessageFormat.format("Base image {0} is already pinned", baseImage));
+        continue;
+      }
+      try {
+        final String digest = dockerClient.inspectDistribution(baseImage).descriptor().digest();
+        log.info(MessageFormat.format("Base image {0} is {1}", baseImage, digest));
+        digests.put(baseImage, digest);
+      } catch (DockerException | InterruptedException e) {
+        throw new MojoExecutionException("Could not resolve the digest of " + baseImage, e);
+      }
+    }
+
+    try {
+      DockerLock.write(lockFile().toPath(), digests);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Could not write " + lockFile(), e);
+    }
+    log.info(MessageFormat.format("Wrote {0} base image digest(s) to {1}", digests.size(),
+        lockFile()));
+  }
+}
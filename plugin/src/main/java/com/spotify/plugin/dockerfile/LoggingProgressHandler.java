@@ -21,10 +21,12 @@
 package com.spotify.plugin.dockerfile;
 
 import com.google.common.base.Objects;
-import com.google.common.base.Splitter;
 import com.spotify.docker.client.ProgressHandler;
 import com.spotify.docker.client.exceptions.DockerException;
 import com.spotify.docker.client.messages.ProgressMessage;
+import com.spotify.plugin.dockerfile.progress.ProgressEvent;
+import com.spotify.plugin.dockerfile.progress.ProgressEvent.Operation;
+import com.spotify.plugin.dockerfile.progress.ProgressListener;
 
 import java.text.MessageFormat;
 import java.util.HashMap;
@@ -35,53 +37,57 @@ import javax.annotation.Nullable;
 
 import org.apache.maven.plugin.logging.Log;
 
-class LoggingProgressHandler implements ProgressHandler {
+/**
+ * Logs the progress of a Docker operation.  It is one of the listeners of the events that the
+ * progress messages are turned into, along with any registered {@link ProgressListener}s.
+ */
+class LoggingProgressHandler implements ProgressHandler, ProgressListener {
 
-  private static final Splitter LINE_SPLITTER = Splitter.on('\n');
   private final Log log;
   private final boolean verbose;
-  private String builtImageId;
+  private final ProgressEvents events;
   private Map<String, String> imageStatuses = new HashMap<>();
 
   LoggingProgressHandler(Log log, boolean verbose) {
+    this(log, verbose, Operation.BUILD, null);
+  }
+
+  LoggingProgressHandler(Log log, boolean verbose, Operation operation, @Nullable String image) {
     this.log = log;
     this.verbose = verbose;
+    this.events = new ProgressEvents(log, operation, image, this);
   }
 
   public static LoggingProgressHandler forLog(Log log, boolean verbose) {
     return new LoggingProgressHandler(log, verbose);
   }
 
+  public static LoggingProgressHandler forLog(Log log,
+                                              boolean verbose,
+                                              Operation operation,
+                                              @Nullable String image) {
+    return new LoggingProgressHandler(log, verbose, operation, image);
+  }
+
   @Nullable
   public String builtImageId() {
-    return builtImageId;
+    return events.builtImageId();
   }
 
   @Override
   public void progress(ProgressMessage message) throws DockerException {
-    if (message.error() != null) {
-      handleError(message.error());
-    } else if (message.progressDetail() != null) {
-      handleProgress(message.id(), message.status(), message.progress());
-    } else if ((message.status() != null) || (message.stream() != null)) {
-      handleGeneric(message.stream(), message.status());
-    }
-
-    String imageId = message.buildImageId();
-    if (imageId != null) {
-      builtImageId = imageId;
-    }
+    events.progress(message);
   }
 
-  void handleGeneric(@Nullable String stream, @Nonnull String status) {
-    final String value;
-    if (stream != null) {
-      value = trimNewline(stream);
-    } else {
-      value = status;
-    }
-    for (String line : LINE_SPLITTER.split(value)) {
-      log.info(line);
+  @Override
+  public void onEvent(ProgressEvent event) {
+    if (event instanceof ProgressEvent.Output) {
+      log.info(((ProgressEvent.Output) event).getLine());
+    } else if (event instanceof ProgressEvent.LayerProgress) {
+      final ProgressEvent.LayerProgress progress = (ProgressEvent.LayerProgress) event;
+      handleProgress(progress.getLayerId(), progress.getStatus(), progress.getProgressBar());
+    } else if (event instanceof ProgressEvent.Failure) {
+      log.error(((ProgressEvent.Failure) event).getMessage());
     }
   }
 
@@ -99,18 +105,4 @@ class LoggingProgressHandler implements ProgressHandler {
       }
     }
   }
-
-  void handleError(@Nonnull String error) throws DockerException {
-    log.error(error);
-    throw new DockerException(error);
-  }
-
-  @Nonnull
-  static String trimNewline(@Nonnull String string) {
-    if (string.endsWith("\n")) {
-      return string.substring(0, string.length() - 1);
-    } else {
-      return string;
-    }
-  }
 }
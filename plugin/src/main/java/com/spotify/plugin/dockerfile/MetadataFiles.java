@@ -0,0 +1,134 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.google.common.util.concurrent.Striped;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Reads and writes the files in the docker info directory, so that executions that share the
+ * directory, in this Maven process or in another one, never see a partially written file or lose
+ * each other's updates.  A file is replaced by renaming a temporary file over it, while holding a
+ * lock on that file: a striped lock within this process, and a file lock on a hidden
+ * <tt>.name.lock</tt> file next to it across processes.
+ */
+final class MetadataFiles {
+
+  /**
+   * Patterns matching the lock and temporary files, which are not part of the metadata.
+   */
+  static final String[] EXCLUDES = {"**/.*.lock", "**/.*.tmp"};
+
+  private static final String LOCK_SUFFIX = ".lock";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private static final Striped<Lock> LOCKS = Striped.lock(64);
+
+  private MetadataFiles() {
+  }
+
+  /**
+   * Returns whether the file with the given name holds metadata, as opposed to being a lock or
+   * temporary file.
+   */
+  static boolean isMetadata(@Nonnull String fileName) {
+    return !(fileName.startsWith(".")
+             && (fileName.endsWith(LOCK_SUFFIX) || fileName.endsWith(TEMP_SUFFIX)));
+  }
+
+  /**
+   * Reads the first line of a file.
+   *
+   * @return the line, or null if the file does not exist or is empty
+   */
+  @Nullable
+  static String read(@Nonnull Path file) throws IOException {
+    final List<String> lines;
+    try {
+      lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    return lines.isEmpty() ? null : lines.get(0);
+  }
+
+  /**
+   * Replaces the contents of a file with a single line, or deletes it if the value is null.
+   *
+   * @return whether the file changed
+   */
+  static boolean write(@Nonnull Path file, @Nullable String value) throws IOException {
+    final Path absolute = file.toAbsolutePath().normalize();
+    final Lock lock = LOCKS.get(absolute.toString());
+    lock.lock();
+    try (FileChannel channel = FileChannel.open(lockFile(absolute), CREATE, WRITE);
+         FileLock ignored = channel.lock()) {
+      if (Objects.equals(read(absolute), value)) {
+        return false;
+      }
+      if (value == null) {
+        Files.deleteIfExists(absolute);
+      } else {
+        replace(absolute, (value + "\n").getBytes(StandardCharsets.UTF_8));
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static void replace(@Nonnull Path file, @Nonnull byte[] contents) throws IOException {
+    final Path temp = Files.createTempFile(
+        file.getParent(), "." + file.getFileName().toString(), TEMP_SUFFIX);
+    try {
+      Files.write(temp, contents);
+      try {
+        Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, file, REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  @Nonnull
+  private static Path lockFile(@Nonnull Path file) {
+    return file.resolveSibling("." + file.getFileName().toString() + LOCK_SUFFIX);
+  }
+}
@@ -0,0 +1,243 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A gzip output stream that compresses blocks of input on several threads, in the same way as
+ * <tt>pigz</tt>.  Each block is deflated independently (primed with the last 32 KiB of the
+ * previous block as a dictionary, so the ratio stays close to single-threaded gzip) and ends with
+ * a sync flush, so that the compressed blocks can simply be concatenated into one gzip member.
+ * The output is a regular gzip file.
+ *
+ * <p>At most two blocks per thread are in flight at any time, so memory use is bounded no matter
+ * how much data is written.
+ */
+final class ParallelGzipOutputStream extends FilterOutputStream {
+
+  static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+  private static final int GZIP_MAGIC = 0x8b1f;
+  private static final int FLAG_COMMENT = 0x10;
+  private static final int OS_UNKNOWN = 255;
+
+  private final int level;
+  private final int blockSize;
+  private final int maxInFlight;
+  private final ExecutorService executor;
+  private final Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+  private final CRC32 crc = new CRC32();
+
+  private byte[] block;
+  private int blockLength;
+  private byte[] dictionary;
+  private long totalLength;
+  private boolean closed;
+
+  /**
+   * Creates a stream and writes the gzip header.
+   *
+   * @param out     the stream to write the compressed data to
+   * @param threads the number of compression threads
+   * @param level   the deflate compression level, from 1 to 9
+   * @param comment an optional comment to record in the gzip header
+   */
+  ParallelGzipOutputStream(@Nonnull OutputStream out, int threads, int level,
+                           @Nullable String comment) throws IOException {
+    this(out, threads, level, comment, DEFAULT_BLOCK_SIZE);
+  }
+
+  ParallelGzipOutputStream(@Nonnull OutputStream out, int threads, int level,
+                           @Nullable String comment, int blockSize) throws IOException {
+    super(out);
+    this.level = level;
+    this.blockSize = blockSize;
+    this.maxInFlight = Math.max(1, threads) * 2;
+    this.block = new byte[blockSize];
+    writeHeader(comment);
+    // Last, so that a failure above does not leave a pool behind that nobody shuts down
+    this.executor = Executors.newFixedThreadPool(Math.max(1, threads),
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("dockerfile-gzip-%d").build());
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(@Nonnull byte[] bytes, int offset, int length) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    crc.update(bytes, offset, length);
+    totalLength += length;
+
+    while (length > 0) {
+      final int chunk = Math.min(length, blockSize - blockLength);
+      System.arraycopy(bytes, offset, block, blockLength, chunk);
+      blockLength += chunk;
+      offset += chunk;
+      length -= chunk;
+      if (blockLength == blockSize) {
+        submitBlock(false);
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    // Blocks are only complete once they are full; flushing early would hurt the ratio
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      submitBlock(true);
+      while (!inFlight.isEmpty()) {
+        writeCompleted();
+      }
+      writeTrailer();
+      out.flush();
+    } finally {
+      executor.shutdownNow();
+      out.close();
+    }
+  }
+
+  private void submitBlock(final boolean last) throws IOException {
+    final byte[] input = Arrays.copyOf(block, blockLength);
+    final byte[] primer = dictionary;
+
+    if (input.length >= DICTIONARY_SIZE) {
+      dictionary = Arrays.copyOfRange(input, input.length - DICTIONARY_SIZE, input.length);
+    } else if (input.length > 0) {
+      dictionary = input;
+    }
+    blockLength = 0;
+
+    if (inFlight.size() >= maxInFlight) {
+      writeCompleted();
+    }
+    inFlight.add(executor.submit(new Callable<byte[]>() {
+      @Override
+      public byte[] call() {
+        return deflate(input, primer, last, level);
+      }
+    }));
+  }
+
+  private void writeCompleted() throws IOException {
+    final Future<byte[]> next = inFlight.remove();
+    try {
+      out.write(next.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing");
+    } catch (ExecutionException e) {
+      throw new IOException("Could not compress block", e.getCause());
+    }
+  }
+
+  @Nonnull
+  static byte[] deflate(@Nonnull byte[] input, @Nullable byte[] dictionary, boolean last,
+                        int level) {
+    final Deflater deflater = new Deflater(level, true);
+    try {
+      if (dictionary != null) {
+        deflater.setDictionary(dictionary);
+      }
+      deflater.setInput(input);
+
+      final ByteArrayOutputStream result = new ByteArrayOutputStream(input.length / 2 + 64);
+      final byte[] buffer = new byte[64 * 1024];
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          final int length = deflater.deflate(buffer);
+          result.write(buffer, 0, length);
+        }
+      } else {
+        int length;
+        do {
+          length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          result.write(buffer, 0, length);
+        } while (length == buffer.length || !deflater.needsInput());
+      }
+      return result.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void writeHeader(@Nullable String comment) throws IOException {
+    writeShort(GZIP_MAGIC);
+    out.write(Deflater.DEFLATED);
+    out.write(comment == null ? 0 : FLAG_COMMENT);
+    writeInt(0); // No modification time
+    out.write(0); // No extra flags
+    out.write(OS_UNKNOWN);
+    if (comment != null) {
+      out.write(comment.getBytes(StandardCharsets.ISO_8859_1));
+      out.write(0);
+    }
+  }
+
+  private void writeTrailer() throws IOException {
+    writeInt((int) crc.getValue());
+    writeInt((int) totalLength);
+  }
+
+  private void writeShort(int value) throws IOException {
+    out.write(value & 0xff);
+    out.write((value >> 8) & 0xff);
+  }
+
+  private void writeInt(int value) throws IOException {
+    writeShort(value & 0xffff);
+    writeShort((value >> 16) & 0xffff);
+  }
+}
@@ -0,0 +1,169 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.google.common.base.Splitter;
+import com.spotify.docker.client.ProgressHandler;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ProgressMessage;
+import com.spotify.plugin.dockerfile.progress.ProgressEvent;
+import com.spotify.plugin.dockerfile.progress.ProgressEvent.Operation;
+import com.spotify.plugin.dockerfile.progress.ProgressListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Turns the progress messages of the Docker daemon into {@link ProgressEvent}s, and passes them
+ * to a listener of the plugin and to the listeners registered through {@link ServiceLoader}.
+ */
+final class ProgressEvents implements ProgressHandler {
+
+  private static final Splitter LINE_SPLITTER = Splitter.on('\n');
+  private static final Pattern STEP = Pattern.compile("^Step (\\d+)(?:/(\\d+))? : (.*)$");
+  private static final Pattern STEP_RESULT = Pattern.compile("^ ---> ([0-9a-f]{12,})$");
+
+  private static List<ProgressListener> registeredListeners;
+
+  private final Log log;
+  private final Operation operation;
+  private final String image;
+  private final List<ProgressListener> listeners = new ArrayList<>();
+
+  private int step;
+  private String stepResult;
+  private String builtImageId;
+
+  ProgressEvents(@Nonnull Log log,
+                 @Nonnull Operation operation,
+                 @Nullable String image,
+                 @Nonnull ProgressListener listener) {
+    this.log = log;
+    this.operation = operation;
+    this.image = image;
+    this.listeners.add(listener);
+    this.listeners.addAll(registeredListeners(log));
+  }
+
+  @Nullable
+  String builtImageId() {
+    return builtImageId;
+  }
+
+  @Override
+  public synchronized void progress(ProgressMessage message) throws DockerException {
+    if (message.error() != null) {
+      dispatch(new ProgressEvent.Failure(operation, image, message.error()));
+      throw new DockerException(message.error());
+    } else if (message.progressDetail() != null) {
+      dispatch(new ProgressEvent.LayerProgress(operation, image, message.id(), message.status(),
+          message.progressDetail().current(), message.progressDetail().total(),
+          message.progress()));
+    } else if (message.stream() != null) {
+      for (String line : LINE_SPLITTER.split(trimNewline(message.stream()))) {
+        stepOutput(line);
+        dispatch(new ProgressEvent.Output(operation, image, line));
+      }
+    } else if (message.status() != null) {
+      for (String line : LINE_SPLITTER.split(message.status())) {
+        dispatch(new ProgressEvent.Output(operation, image, line));
+      }
+    }
+
+    final String imageId = message.buildImageId();
+    if (imageId != null && !imageId.equals(builtImageId)) {
+      finishStep();
+      builtImageId = imageId;
+      dispatch(new ProgressEvent.ImageBuilt(image, imageId));
+    }
+  }
+
+  /**
+   * Follows the steps of a build through the lines that the classic builder prints.
+   */
+  private void stepOutput(@Nonnull String line) {
+    final Matcher started = STEP.matcher(line);
+    if (started.matches()) {
+      finishStep();
+      step = Integer.parseInt(started.group(1));
+      dispatch(new ProgressEvent.BuildStepStarted(image, step,
+          started.group(2) == null ? 0 : Integer.parseInt(started.group(2)), started.group(3)));
+      return;
+    }
+    final Matcher result = STEP_RESULT.matcher(line);
+    if (result.matches()) {
+      stepResult = result.group(1);
+    }
+  }
+
+  private void finishStep() {
+    if (step > 0) {
+      dispatch(new ProgressEvent.BuildStepFinished(image, step, stepResult));
+      step = 0;
+      stepResult = null;
+    }
+  }
+
+  private void dispatch(@Nonnull ProgressEvent event) {
+    for (ProgressListener listener : listeners) {
+      try {
+        listener.onEvent(event);
+      } catch (RuntimeException e) {
+        // A broken listener must not fail the build
+        log.debug("Progress listener " + listener.getClass().getName() + " failed", e);
+      }
+    }
+  }
+
+  @Nonnull
+  private static synchronized List<ProgressListener> registeredListeners(@Nonnull Log log) {
+    if (registeredListeners == null) {
+      final List<ProgressListener> found = new ArrayList<>();
+      try {
+        for (ProgressListener listener : ServiceLoader.load(
+            ProgressListener.class, ProgressListener.class.getClassLoader())) {
+          log.debug("Using progress listener " + listener.getClass().getName());
+          found.add(listener);
+        }
+      } catch (ServiceConfigurationError e) {
+        log.warn("Could not load progress listeners", e);
+      }
+      registeredListeners = Collections.unmodifiableList(found);
+    }
+    return registeredListeners;
+  }
+
+  @Nonnull
+  static String trimNewline(@Nonnull String string) {
+    if (string.endsWith("\n")) {
+      return string.substring(0, string.length() - 1);
+    } else {
+      return string;
+    }
+  }
+}
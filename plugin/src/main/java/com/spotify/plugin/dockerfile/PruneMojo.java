@@ -0,0 +1,292 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.ListImagesParam;
+import com.spotify.docker.client.exceptions.ConflictException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import com.spotify.docker.client.messages.Image;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Removes images built by earlier builds of this project, as found by the label that the
+ * <tt>build</tt> goal adds to each image.  The most recent images are kept, as is the image in the
+ * metadata of the current build and any image still named <tt>repository:tag</tt>.  Only names in
+ * the project's repository are removed; an image that another project reused under its own name
+ * keeps that name and stays.
+ */
+@Mojo(name = "prune",
+    requiresProject = true,
+    threadSafe = true)
+public class PruneMojo extends AbstractDockerMojo {
+
+  /**
+   * The repository the project builds its image into, for example <tt>spotify/foo</tt>.
+   */
+  @Parameter(property = "dockerfile.repository")
+  private String repository;
+
+  /**
+   * The tag the project builds its image with.
+   */
+  @Parameter(property = "dockerfile.tag", defaultValue = "latest")
+  private String tag;
+
+  /**
+   * How many of the most recent images of this project to keep, in addition to the protected
+   * ones.
+   */
+  @Parameter(property = "dockerfile.prune.keep", defaultValue = "3")
+  private int keep;
+
+  /**
+   * The maximum number of images to remove at the same time.
+   */
+  @Parameter(property = "dockerfile.prune.threads", defaultValue = "4")
+  private int pruneThreads;
+
+  /**
+   * Disables the prune goal; it becomes a no-op.
+   */
+  @Parameter(property = "dockerfile.prune.skip", defaultValue = "false")
+  private boolean skipPrune;
+
+  @Override
+  protected void execute(DockerClient dockerClient)
+      throws MojoExecutionException, MojoFailureException {
+    final Log log = getLog();
+
+    if (skipPrune) {
+      log.info("Skipping execution because 'dockerfile.prune.skip' is set");
+      return;
+    }
+
+    final String coordinates = BuildMojo.projectCoordinates(project);
+    final List<Candidate> images = new ArrayList<>();
+    final Set<String> protectedIds = new HashSet<>();
+    try {
+      for (Image image : dockerClient.listImages(
+          ListImagesParam.withLabel(BuildMojo.PROJECT_LABEL, coordinates))) {
+        images.add(new Candidate(image.id(), BuildMojo.created(image), image.repoTags()));
+      }
+      addProtected(dockerClient, protectedIds, readMetadata(Metadata.IMAGE_ID));
+      if (repository != null) {
+        addProtected(dockerClient, protectedIds, formatImageName(repository, tag));
+      }
+    } catch (DockerException | InterruptedException e) {
+      throw new MojoExecutionException("Could not list Docker images", e);
+    }
+
+    if (images.isEmpty()) {
+      log.info(MessageFormat.format("Found no images of {0}; only images built with "
+          + "'dockerfile.build.projectLabel' set can be pruned", coordinates));
+      return;
+    }
+    final List<Candidate> candidates = candidates(images, protectedIds, keep);
+    if (candidates.isEmpty()) {
+      log.info(MessageFormat.format(
+          "Found {0} image(s) of {1}, none to remove", images.size(), coordinates));
+      return;
+    }
+    log.info(MessageFormat.format("Found {0} image(s) of {1}, removing {2}",
+        images.size(), coordinates, candidates.size()));
+    remove(dockerClient, log, candidates);
+  }
+
+  /**
+   * Returns the images to remove: all but the <tt>keep</tt> most recent ones, never including a
+   * protected image.
+   */
+  @Nonnull
+  static List<Candidate> candidates(@Nonnull List<Candidate> images,
+                                    @Nonnull Set<String> protectedIds,
+                                    int keep) {
+    final List<Candidate> sorted = new ArrayList<>(images);
+    Collections.sort(sorted, new Comparator<Candidate>() {
+      @Override
+      public int compare(Candidate a, Candidate b) {
+        return Long.compare(b.created, a.created);
+      }
+    });
+
+    final List<Candidate> candidates = new ArrayList<>();
+    int kept = 0;
+    for (Candidate image : sorted) {
+      if (protectedIds.contains(image.id)) {
+        continue;
+      }
+      if (kept < keep) {
+        kept++;
+      } else {
+        candidates.add(image);
+      }
+    }
+    return candidates;
+  }
+
+  private static void addProtected(@Nonnull DockerClient dockerClient,
+                                   @Nonnull Set<String> protectedIds,
+                                   @Nullable String image)
+      throws DockerException, InterruptedException {
+    if (image == null) {
+      return;
+    }
+    try {
+      protectedIds.add(dockerClient.inspectImage(image).id());
+    } catch (ImageNotFoundException e) {
+      // Nothing to protect
+    }
+  }
+
+  private void remove(final DockerClient dockerClient, final Log log, List<Candidate> images)
+      throws MojoExecutionException {
+    final ExecutorService executor =
+        DockerThreads.newFixedPool("dockerfile-prune", Math.max(1, pruneThreads));
+    try {
+      final Map<String, Future<Void>> removals = new LinkedHashMap<>();
+      for (final Candidate image : images) {
+        removals.put(image.id, executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            removeImage(dockerClient, log, image, repository);
+            return null;
+          }
+        }));
+      }
+
+      int failures = 0;
+      for (Map.Entry<String, Future<Void>> removal : removals.entrySet()) {
+        try {
+          removal.getValue().get();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof ConflictException) {
+            log.warn(MessageFormat.format("Could not remove image {0}, it is still in use",
+                removal.getKey()));
+          } else {
+            log.error("Could not remove image " + removal.getKey(), e.getCause());
+            failures++;
+          }
+        }
+      }
+      if (failures > 0) {
+        throw new MojoExecutionException(
+            MessageFormat.format("Could not remove {0} Docker image(s)", failures));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while removing Docker images", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the names to remove to remove an image: its names in the given repository, or its ID
+   * if it has no names at all.  Removing an image by ID fails if it has names in several
+   * repositories, while removing its last name removes the image.
+   *
+   * @return the names, which are empty if the image has only names in other repositories
+   */
+  @Nonnull
+  static List<String> namesToRemove(@Nonnull Candidate image, @Nullable String repository) {
+    final List<String> names = new ArrayList<>();
+    boolean named = false;
+    for (String name : image.names) {
+      if (name.startsWith("<none>")) {
+        continue;
+      }
+      named = true;
+      if (repository != null && name.startsWith(repository + ":")) {
+        names.add(name);
+      }
+    }
+    if (!named) {
+      names.add(image.id);
+    }
+    return names;
+  }
+
+  /**
+   * Removes the names of an image in the project's repository, or the image itself if it has no
+   * names.  Untagged parent layers are removed along with it.
+   */
+  private static void removeImage(@Nonnull DockerClient dockerClient,
+                                  @Nonnull Log log,
+                                  @Nonnull Candidate image,
+                                  @Nullable String repository)
+      throws DockerException, InterruptedException {
+    final List<String> names = namesToRemove(image, repository);
+    for (String name : names) {
+      log.info(MessageFormat.format("Removing image {0}", name));
+      try {
+        dockerClient.removeImage(name, false, false);
+      } catch (ImageNotFoundException e) {
+        log.debug(MessageFormat.format("Image {0} is already gone", name));
+      }
+    }
+    final List<String> otherNames = new ArrayList<>();
+    for (String name : image.names) {
+      if (!name.startsWith("<none>") && !names.contains(name)) {
+        otherNames.add(name);
+      }
+    }
+    if (!otherNames.isEmpty()) {
+      log.info(MessageFormat.format("Keeping image {0}, it is also named {1}", image.id,
+          otherNames));
+    }
+  }
+
+  /**
+   * An image of this project, as listed by the daemon.
+   */
+  static final class Candidate {
+    final String id;
+    final long created;
+    final List<String> names;
+
+    Candidate(@Nonnull String id, long created, @Nullable List<String> names) {
+      this.id = id;
+      this.created = created;
+      this.names = names == null ? Collections.<String>emptyList() : names;
+    }
+  }
+}
@@ -22,10 +22,19 @@ package com.spotify.plugin.dockerfile;
 
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.plugin.dockerfile.progress.ProgressEvent;
 
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.lifecycle.DefaultLifecycles;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
@@ -55,16 +64,108 @@ public class PushMojo extends AbstractDockerMojo {
   @Parameter(property = "dockerfile.push.skip", defaultValue = "false")
   private boolean skipPush;
 
+  /**
+   * Whether to defer pushing until every module of the reactor has run its push goal, and then
+   * push all images concurrently.  Nothing is pushed if any module fails.
+   */
+  @Parameter(property = "dockerfile.pushAtEnd", defaultValue = "false")
+  private boolean pushAtEnd;
+
+  /**
+   * The maximum number of images to push to the same registry at the same time, when pushing at
+   * the end.
+   */
+  @Parameter(property = "dockerfile.push.threadsPerRegistry", defaultValue = "2")
+  private int pushThreadsPerRegistry;
+
+  @Parameter(defaultValue = "${mojoExecution}", readonly = true, required = true)
+  private MojoExecution mojoExecution;
+
+  @Component
+  private DefaultLifecycles defaultLifecycles;
+
+  /**
+   * The images to push at the end of the reactor, if this is the execution that pushes them.
+   */
+  private List<String> deferredImages;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    if (!skip && !skipPush) {
+      requireOnline("push image");
+    }
+    if (!pushAtEnd) {
+      super.execute();
+      return;
+    }
+
+    final Log log = getLog();
+    final DeferredPushes deferredPushes =
+        DeferredPushes.forSession(session, defaultLifecycles, "push", "deploy");
+
+    List<String> images = Collections.emptyList();
+    if (skip) {
+      log.info("Skipping execution because 'dockerfile.skip' is set");
+    } else if (skipPush) {
+      log.info("Skipping execution because 'dockerfile.push.skip' is set");
+    } else {
+      images = imagesToPush();
+      log.info(MessageFormat.format("Deferring push of {0} to the end of the build", images));
+    }
+
+    deferredImages = deferredPushes.arrive(
+        project.getId() + "@" + mojoExecution.getExecutionId(), images);
+    if (deferredImages == null || deferredImages.isEmpty()) {
+      return;
+    }
+    if (session.getResult().hasExceptions()) {
+      log.warn(MessageFormat.format("Not pushing {0} image(s) because the build has failures",
+          deferredImages.size()));
+      return;
+    }
+    tryExecute(retryCount + 1);
+  }
+
   @Override
   protected void execute(DockerClient dockerClient)
       throws MojoExecutionException, MojoFailureException {
     final Log log = getLog();
 
+    if (deferredImages != null) {
+      DeferredPushes.pushAll(dockerClient, log, verbose, deferredImages, pushThreadsPerRegistry);
+      return;
+    }
+
     if (skipPush) {
       log.info("Skipping execution because 'dockerfile.push.skip' is set");
       return;
     }
 
+    try {
+      for (String image : imagesToPush()) {
+        dockerClient.push(image,
+            LoggingProgressHandler.forLog(log, verbose, ProgressEvent.Operation.PUSH, image));
+      }
+    } catch (DockerException | InterruptedException e) {
+      throw new MojoExecutionException("Could not push image", e);
+    }
+  }
+
+  /**
+   * Returns the image to push, followed by its fingerprint name if the build uses the registry
+   * as a build cache.
+   */
+  private List<String> imagesToPush() throws MojoExecutionException {
+    final List<String> images = new ArrayList<>();
+    images.add(imageToPush());
+    final String fingerprintName = readMetadata(Metadata.FINGERPRINT_IMAGE_NAME);
+    if (fingerprintName != null && !images.contains(fingerprintName)) {
+      images.add(fingerprintName);
+    }
+    return images;
+  }
+
+  private String imageToPush() throws MojoExecutionException {
     if (repository == null) {
       repository = readMetadata(Metadata.REPOSITORY);
     }
@@ -82,12 +183,6 @@ public class PushMojo extends AbstractDockerMojo {
           "Can't push image; image repository not known "
           + "(specify dockerfile.repository parameter, or run the tag goal before)");
     }
-
-    try {
-      dockerClient
-          .push(formatImageName(repository, tag), LoggingProgressHandler.forLog(log, verbose));
-    } catch (DockerException | InterruptedException e) {
-      throw new MojoExecutionException("Could not push image", e);
-    }
+    return formatImageName(repository, tag);
   }
 }
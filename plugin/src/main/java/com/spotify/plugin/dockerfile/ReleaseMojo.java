@@ -0,0 +1,136 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.google.common.base.Joiner;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Builds, tags and pushes an image in one execution.  This is equivalent to running the
+ * <tt>build</tt>, <tt>tag</tt> and <tt>push</tt> goals, but uses a single Docker client, keeps the
+ * image ID in memory instead of passing it through the metadata files, and builds the docker-info
+ * JAR once.  The JAR is attached before pushing, in the <tt>package</tt> phase by default, so that
+ * it is installed and deployed along with the other artifacts of the project.
+ */
+@Mojo(name = "release",
+    defaultPhase = LifecyclePhase.PACKAGE,
+    requiresProject = true,
+    threadSafe = true)
+public class ReleaseMojo extends BuildMojo {
+
+  /**
+   * Additional tags to apply to the built image in the same repository, and push.
+   */
+  @Parameter(property = "dockerfile.release.tags")
+  private List<String> tags;
+
+  /**
+   * The maximum number of tags to push at the same time.
+   */
+  @Parameter(property = "dockerfile.release.pushThreads", defaultValue = "4")
+  private int pushThreads;
+
+  /**
+   * Disables the release goal; it becomes a no-op.
+   */
+  @Parameter(property = "dockerfile.release.skip", defaultValue = "false")
+  private boolean skipRelease;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    if (!skip && !skipRelease) {
+      requireOnline("release image");
+    }
+    super.execute();
+  }
+
+  @Override
+  public void execute(DockerClient dockerClient)
+      throws MojoExecutionException, MojoFailureException {
+    final Log log = getLog();
+
+    if (skipRelease) {
+      log.info("Skipping execution because 'dockerfile.release.skip' is set");
+      return;
+    }
+
+    if (repository == null) {
+      throw new MojoFailureException(
+          "Can't release image; specify the dockerfile.repository parameter");
+    }
+
+    final String imageId = build(dockerClient, log);
+    if (imageId == null) {
+      throw new MojoExecutionException(
+          "Can't release image; the build was successful but did not produce an image");
+    }
+    log.info(MessageFormat.format("Detected build of image with id {0}", imageId));
+    reportImageSize(dockerClient, log, imageId);
+
+    // The build already named the image repository:tag
+    final Set<String> allTags = new LinkedHashSet<>();
+    final Set<String> names = new LinkedHashSet<>();
+    allTags.add(tag);
+    names.add(formatImageName(repository, tag));
+    if (tags != null) {
+      for (String extraTag : tags) {
+        final String name = formatImageName(repository, extraTag);
+        allTags.add(extraTag);
+        if (names.add(name)) {
+          try {
+            dockerClient.tag(imageId, name, true);
+          } catch (DockerException | InterruptedException e) {
+            throw new MojoExecutionException("Could not tag Docker image", e);
+          }
+        }
+      }
+    }
+
+    final String fingerprintName = readMetadata(Metadata.FINGERPRINT_IMAGE_NAME);
+    if (fingerprintName != null) {
+      names.add(fingerprintName);
+    }
+
+    // Attach the JAR before pushing, so that install and deploy pick it up even if they are bound
+    // to the same phase as this goal
+    writeMetadata(Metadata.IMAGE_ID, imageId);
+    writeMetadata(Metadata.TAGS, Joiner.on(',').join(allTags));
+    writeImageInfo(repository, tag);
+    writeMetadata(log);
+
+    DeferredPushes.pushAll(
+        dockerClient, log, verbose, new ArrayList<>(names), Math.max(1, pushThreads));
+
+    log.info(MessageFormat.format("Successfully released {0}", names));
+  }
+}
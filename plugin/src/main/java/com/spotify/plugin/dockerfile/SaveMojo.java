@@ -0,0 +1,156 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.google.common.io.ByteStreams;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Saves the built image as a gzipped <tt>docker save</tt> archive and attaches it to the project,
+ * so that it is installed and deployed to Maven repositories next to the docker-info JAR.
+ */
+@Mojo(name = "save",
+    defaultPhase = LifecyclePhase.PACKAGE,
+    requiresProject = true,
+    threadSafe = true)
+public class SaveMojo extends AbstractDockerMojo {
+
+  /**
+   * The repository of the image to save.  Defaults to the repository of the last built or tagged
+   * image; if neither is known, the image is saved by ID, without a name.
+   */
+  @Parameter(property = "dockerfile.repository")
+  private String repository;
+
+  /**
+   * The tag of the image to save.
+   */
+  @Parameter(property = "dockerfile.tag")
+  private String tag;
+
+  /**
+   * Classifier to use when attaching the image archive.
+   */
+  @Parameter(defaultValue = ImageArchive.TYPE, property = "dockerfile.save.classifier",
+      required = true)
+  private String imageClassifier;
+
+  /**
+   * The number of threads to compress the image with.  Defaults to the number of processors.
+   */
+  @Parameter(defaultValue = "0", property = "dockerfile.save.compressionThreads")
+  private int compressionThreads;
+
+  /**
+   * The gzip compression level, from 1 (fastest) to 9 (smallest).
+   */
+  @Parameter(defaultValue = "6", property = "dockerfile.save.compressionLevel")
+  private int compressionLevel;
+
+  /**
+   * Disables the save goal; it becomes a no-op.
+   */
+  @Parameter(property = "dockerfile.save.skip", defaultValue = "false")
+  private boolean skipSave;
+
+  @Override
+  protected void execute(DockerClient dockerClient)
+      throws MojoExecutionException, MojoFailureException {
+    final Log log = getLog();
+
+    if (skipSave) {
+      log.info("Skipping execution because 'dockerfile.save.skip' is set");
+      return;
+    }
+
+    if (compressionLevel < 1 || compressionLevel > 9) {
+      throw new MojoFailureException(
+          "dockerfile.save.compressionLevel must be between 1 and 9, was " + compressionLevel);
+    }
+
+    final String image = imageToSave();
+    final String imageId;
+    try {
+      imageId = dockerClient.inspectImage(image).id();
+    } catch (DockerException | InterruptedException e) {
+      throw new MojoExecutionException("Could not inspect image " + image, e);
+    }
+
+    final int threads =
+        compressionThreads > 0 ? compressionThreads : Runtime.getRuntime().availableProcessors();
+    final File archive = getArtifactFile(imageClassifier, ImageArchive.EXTENSION);
+    if (!archive.getParentFile().isDirectory() && !archive.getParentFile().mkdirs()) {
+      throw new MojoExecutionException("Could not create directory " + archive.getParentFile());
+    }
+
+    log.info(MessageFormat.format("Saving image {0} to {1} using {2} compression thread(s)",
+        image, archive, threads));
+
+    // Stream straight from the daemon into the compressor; the tar is never held in full
+    try (InputStream in = dockerClient.save(image);
+         OutputStream out = new ParallelGzipOutputStream(
+             new BufferedOutputStream(new FileOutputStream(archive)), threads, compressionLevel,
+             imageId)) {
+      ByteStreams.copy(in, out);
+    } catch (DockerException | IOException | InterruptedException e) {
+      throw new MojoExecutionException("Could not save image " + image, e);
+    }
+
+    log.info(MessageFormat.format("Saved image {0} ({1} bytes)", imageId, archive.length()));
+    attachArtifact(ImageArchive.TYPE, imageClassifier, archive);
+  }
+
+  private String imageToSave() throws MojoExecutionException {
+    String repository = this.repository;
+    if (repository == null) {
+      repository = readMetadata(Metadata.REPOSITORY);
+    }
+    String tag = this.tag;
+    if (tag == null) {
+      tag = readMetadata(Metadata.TAG);
+    }
+    if (repository != null) {
+      return formatImageName(repository, tag == null ? "latest" : tag);
+    }
+
+    final String imageId = readMetadata(Metadata.IMAGE_ID);
+    if (imageId == null) {
+      throw new MojoExecutionException(
+          "Can't save image; image not known "
+          + "(specify dockerfile.repository parameter, or run the build goal before)");
+    }
+    return imageId;
+  }
+}
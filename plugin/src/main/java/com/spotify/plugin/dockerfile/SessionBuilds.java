@@ -0,0 +1,123 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.plugin.dockerfile;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.aether.SessionData;
+
+/**
+ * The builds of a session by build request, so that modules that build the same image at the
+ * same time only build it once.  The registry is shared by all modules through the data of the
+ * repository session.  Only JDK types are stored there, so that modules using different copies
+ * of this class can share it.
+ */
+final class SessionBuilds {
+
+  private static final String KEY = BuildMojo.class.getName() + ".builds";
+
+  interface Build {
+
+    /**
+     * Builds the image.
+     *
+     * @return the ID of the image, or null if it is not known
+     */
+    @Nullable
+    String build() throws MojoExecutionException, MojoFailureException;
+
+    /**
+     * Uses an image that another module built for the same request.
+     */
+    void reuse(@Nonnull String imageId) throws MojoExecutionException, MojoFailureException;
+  }
+
+  private final ConcurrentMap<String, CompletableFuture<String>> builds;
+
+  SessionBuilds(@Nonnull ConcurrentMap<String, CompletableFuture<String>> builds) {
+    this.builds = builds;
+  }
+
+  @Nonnull
+  @SuppressWarnings("unchecked")
+  static SessionBuilds forSession(@Nonnull MavenSession session) {
+    final SessionData data = session.getRepositorySession().getData();
+    Object builds = data.get(KEY);
+    if (builds == null) {
+      final ConcurrentMap<String, CompletableFuture<String>> created = new ConcurrentHashMap<>();
+      builds = data.set(KEY, null, created) ? created : data.get(KEY);
+    }
+    return new SessionBuilds((ConcurrentMap<String, CompletableFuture<String>>) builds);
+  }
+
+  /**
+   * Runs a build, unless a build of the same request has run or is running in this session, in
+   * which case its image is reused once it is done.  If that build fails, one of the modules
+   * waiting for it builds the image instead.  If it does not know the ID of its image, each
+   * waiting module builds the image itself.
+   *
+   * @param key identifies everything that goes into the build
+   * @return the ID of the image, or null if it is not known
+   */
+  @Nullable
+  String reuseOrBuild(@Nonnull String key, @Nonnull Build build, @Nonnull Log log)
+      throws MojoExecutionException, MojoFailureException {
+    while (true) {
+      final CompletableFuture<String> running = new CompletableFuture<>();
+      final CompletableFuture<String> existing = builds.putIfAbsent(key, running);
+      if (existing == null) {
+        try {
+          final String imageId = build.build();
+          running.complete(imageId);
+          return imageId;
+        } catch (MojoExecutionException | MojoFailureException | RuntimeException e) {
+          // Modules waiting for this build will try to build it themselves
+          builds.remove(key, running);
+          running.completeExceptionally(e);
+          throw e;
+        }
+      }
+
+      log.info("An identical image is being built by another module, waiting for it");
+      final String imageId;
+      try {
+        imageId = existing.get();
+      } catch (ExecutionException e) {
+        continue;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MojoExecutionException("Interrupted while waiting for an identical build", e);
+      }
+      if (imageId == null) {
+        return build.build();
+      }
+      build.reuse(imageId);
+      return imageId;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.Locale;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * How seriously to take a problem found by one of the plugin's checks.
+ */
+enum Severity {
+  /**
+   * The check does not run at all.
+   */
+  OFF,
+
+  /**
+   * Problems are logged as warnings and the build continues.
+   */
+  WARN,
+
+  /**
+   * Problems are logged as errors and fail the build.
+   */
+  FAIL;
+
+  @Nonnull
+  static Severity parse(@Nullable String value, @Nonnull String parameterName)
+      throws MojoFailureException {
+    if (value == null || value.trim().isEmpty()) {
+      return OFF;
+    }
+    try {
+      return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new MojoFailureException(MessageFormat.format(
+          "Invalid value \"{0}\" for {1}; expected one of off, warn or fail", value,
+          parameterName));
+    }
+  }
+
+  /**
+   * Reports the given problems according to this severity.
+   *
+   * @throws MojoFailureException if there are problems and this severity is {@link #FAIL}
+   */
+  void report(@Nonnull Log log, @Nonnull String summary, @Nonnull List<String> problems)
+      throws MojoFailureException {
+    if (this == OFF || problems.isEmpty()) {
+      return;
+    }
+    for (String problem : problems) {
+      if (this == FAIL) {
+        log.error(problem);
+      } else {
+        log.warn(problem);
+      }
+    }
+    if (this == FAIL) {
+      throw new MojoFailureException(
+          MessageFormat.format("{0} ({1} problem(s) found)", summary, problems.size()));
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.plugin.dockerfile.extension.SessionResources;
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nonnull;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Docker clients shared by all goal executions of a session that use the same client
+ * configuration, so that the HTTP stack of the client and its connection pool are set up once per
+ * build instead of once per goal execution.  The extension closes the clients when the session
+ * ends (see {@link SessionResources}); without it, they are closed when Maven exits.
+ */
+final class SharedDockerClients implements Closeable {
+
+  private static final String KEY = SharedDockerClients.class.getName();
+
+  interface Factory {
+    @Nonnull
+    DockerClient create() throws MojoExecutionException;
+  }
+
+  private final ConcurrentMap<String, DockerClient> clients = new ConcurrentHashMap<>();
+
+  private SharedDockerClients() {
+  }
+
+  @Nonnull
+  @SuppressWarnings("unchecked")
+  static SharedDockerClients forSession(@Nonnull MavenSession session) {
+    final SessionData data = session.getRepositorySession().getData();
+    Object shared = data.get(KEY);
+    if (shared == null) {
+      final SharedDockerClients created = new SharedDockerClients();
+      if (data.set(KEY, null, created)) {
+        final Object closeAtEnd = data.get(SessionResources.CLOSE_AT_SESSION_END_KEY);
+        if (closeAtEnd instanceof Queue) {
+          ((Queue<Closeable>) closeAtEnd).add(created);
+        }
+        shared = created;
+      } else {
+        shared = data.get(KEY);
+      }
+    }
+    // Modules using another version of the plugin can't share clients with this one
+    return shared instanceof SharedDockerClients
+           ? (SharedDockerClients) shared : new SharedDockerClients();
+  }
+
+  /**
+   * Returns the client for a configuration, creating it if it does not exist yet.
+   *
+   * @param configuration a key identifying everything the factory configures the client with
+   */
+  @Nonnull
+  DockerClient get(@Nonnull String configuration, @Nonnull Factory factory)
+      throws MojoExecutionException {
+    final DockerClient existing = clients.get(configuration);
+    if (existing != null) {
+      return existing;
+    }
+    final DockerClient created = factory.create();
+    final DockerClient raced = clients.putIfAbsent(configuration, created);
+    if (raced != null) {
+      created.close();
+      return raced;
+    }
+    return created;
+  }
+
+  @Override
+  public void close() {
+    for (DockerClient client : clients.values()) {
+      client.close();
+    }
+    clients.clear();
+  }
+}
@@ -0,0 +1,284 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Lays out the runtime dependencies, snapshot dependencies, resources and classes of the project
+ * in separate directories, so that a Dockerfile can <tt>COPY</tt> each group into its own layer.
+ * Changing a single class then only changes the (small) classes layer, and the layers with
+ * third-party dependencies are reused from the cache and by registries.
+ */
+@Mojo(name = "stage",
+    defaultPhase = LifecyclePhase.PACKAGE,
+    requiresProject = true,
+    requiresDependencyResolution = ResolutionScope.RUNTIME,
+    threadSafe = true)
+public class StageMojo extends AbstractMojo {
+
+  enum Layer {
+    DEPENDENCIES("dependencies"),
+    SNAPSHOT_DEPENDENCIES("snapshot-dependencies"),
+    RESOURCES("resources"),
+    CLASSES("classes");
+
+    private final String directoryName;
+
+    Layer(String directoryName) {
+      this.directoryName = directoryName;
+    }
+
+    public String getDirectoryName() {
+      return directoryName;
+    }
+  }
+
+  /**
+   * Directory to lay the layers out in.  It has to be inside the Docker build context for the
+   * Dockerfile to be able to copy from it.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/docker-layers",
+      property = "dockerfile.stage.outputDirectory",
+      required = true)
+  private File outputDirectory;
+
+  /**
+   * Directory containing the compiled classes and processed resources of the project.
+   */
+  @Parameter(defaultValue = "${project.build.outputDirectory}",
+      property = "dockerfile.stage.classesDirectory",
+      required = true)
+  private File classesDirectory;
+
+  /**
+   * Disables the entire dockerfile plugin; all goals become no-ops.
+   */
+  @Parameter(defaultValue = "false", property = "dockerfile.skip")
+  private boolean skip;
+
+  /**
+   * Disables the stage goal; it becomes a no-op.
+   */
+  @Parameter(defaultValue = "false", property = "dockerfile.stage.skip")
+  private boolean skipStage;
+
+  /**
+   * The Maven project.
+   */
+  @Parameter(defaultValue = "${project}", readonly = true, required = true)
+  private MavenProject project;
+
+  @Override
+  public void execute() throws MojoExecutionException {
+    final Log log = getLog();
+
+    if (skip) {
+      log.info("Skipping execution because 'dockerfile.skip' is set");
+      return;
+    }
+    if (skipStage) {
+      log.info("Skipping execution because 'dockerfile.stage.skip' is set");
+      return;
+    }
+
+    final Map<Layer, Map<String, Path>> layers =
+        assignLayers(project.getArtifacts(), classesDirectory, log);
+
+    for (Map.Entry<Layer, Map<String, Path>> entry : layers.entrySet()) {
+      final Path directory = outputDirectory.toPath().resolve(entry.getKey().getDirectoryName());
+      final int copied = sync(entry.getValue(), directory);
+      log.info(MessageFormat.format("Staged {0} {1} file(s) into {2} ({3} changed)",
+          entry.getValue().size(), entry.getKey().getDirectoryName(), directory, copied));
+    }
+  }
+
+  /**
+   * Assigns the dependencies that are added to the classpath, and the classes and resources of the
+   * project, to their layer.  Dependencies are named after their file unless dependencies from
+   * different groups have files of the same name, which are then prefixed with their group ID.
+   *
+   * @return the files of each layer, by path relative to the layer directory
+   */
+  @Nonnull
+  static Map<Layer, Map<String, Path>> assignLayers(@Nonnull Collection<Artifact> artifacts,
+                                                    @Nonnull File classesDirectory,
+                                                    @Nonnull Log log)
+      throws MojoExecutionException {
+    final Map<Layer, Map<String, Path>> layers = new LinkedHashMap<>();
+    for (Layer layer : Layer.values()) {
+      layers.put(layer, new LinkedHashMap<String, Path>());
+    }
+
+    final List<Artifact> dependencies = new ArrayList<>();
+    final Set<String> fileNames = new HashSet<>();
+    final Set<String> ambiguousFileNames = new HashSet<>();
+    for (Artifact artifact : artifacts) {
+      final File file = artifact.getFile();
+      if (file == null || !artifact.getArtifactHandler().isAddedToClasspath()) {
+        continue;
+      }
+      if (!file.isFile()) {
+        log.warn(MessageFormat.format(
+            "Dependency {0} has not been packaged yet and will not be staged", artifact));
+        continue;
+      }
+      dependencies.add(artifact);
+      if (!fileNames.add(file.getName())) {
+        ambiguousFileNames.add(file.getName());
+      }
+    }
+
+    // Both dependency layers are usually copied into the same directory of the image
+    final Map<String, Artifact> staged = new HashMap<>();
+    for (Artifact artifact : dependencies) {
+      final File file = artifact.getFile();
+      final String name = ambiguousFileNames.contains(file.getName())
+                          ? artifact.getGroupId() + "-" + file.getName()
+                          : file.getName();
+      final Artifact clash = staged.put(name, artifact);
+      if (clash != null) {
+        throw new MojoExecutionException(MessageFormat.format(
+            "Dependencies {0} and {1} would both be staged as {2}", clash, artifact, name));
+      }
+      final Layer layer = artifact.isSnapshot() ? Layer.SNAPSHOT_DEPENDENCIES : Layer.DEPENDENCIES;
+      layers.get(layer).put(name, file.toPath());
+    }
+
+    if (classesDirectory.isDirectory()) {
+      collectClassesAndResources(classesDirectory.toPath(), layers.get(Layer.CLASSES),
+          layers.get(Layer.RESOURCES));
+    }
+    return layers;
+  }
+
+  private static void collectClassesAndResources(@Nonnull final Path root,
+                                                 @Nonnull final Map<String, Path> classes,
+                                                 @Nonnull final Map<String, Path> resources)
+      throws MojoExecutionException {
+    try {
+      Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          final String relative = root.relativize(file).toString();
+          if (relative.endsWith(".class")) {
+            classes.put(relative, file);
+          } else {
+            resources.put(relative, file);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      throw new MojoExecutionException("Could not list classes in " + root, e);
+    }
+  }
+
+  /**
+   * Makes <tt>directory</tt> contain exactly the given files.  Files that already have the same
+   * size and modification time are left alone, so that unchanged layers keep their timestamps.
+   *
+   * @return the number of files that were copied
+   */
+  private static int sync(@Nonnull Map<String, Path> files, @Nonnull Path directory)
+      throws MojoExecutionException {
+    int copied = 0;
+    try {
+      Files.createDirectories(directory);
+
+      for (Map.Entry<String, Path> entry : files.entrySet()) {
+        final Path source = entry.getValue();
+        final Path target = directory.resolve(entry.getKey());
+        if (isUpToDate(source, target)) {
+          continue;
+        }
+        Files.createDirectories(target.getParent());
+        Files.copy(source, target,
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        copied++;
+      }
+
+      removeStale(directory, new HashSet<>(files.keySet()));
+    } catch (IOException e) {
+      throw new MojoExecutionException("Could not stage files into " + directory, e);
+    }
+    return copied;
+  }
+
+  private static boolean isUpToDate(@Nonnull Path source, @Nonnull Path target)
+      throws IOException {
+    return Files.isRegularFile(target)
+           && Files.size(source) == Files.size(target)
+           && Files.getLastModifiedTime(source).equals(Files.getLastModifiedTime(target));
+  }
+
+  private static void removeStale(@Nonnull final Path directory, @Nonnull final Set<String> keep)
+      throws IOException {
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        if (!keep.contains(directory.relativize(file).toString())) {
+          Files.delete(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        if (!dir.equals(directory)) {
+          try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            if (!entries.iterator().hasNext()) {
+              Files.delete(dir);
+            }
+          }
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
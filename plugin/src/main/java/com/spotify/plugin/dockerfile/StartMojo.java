@@ -0,0 +1,391 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.EndpointConfig;
+import com.spotify.docker.client.messages.HostConfig;
+import com.spotify.docker.client.messages.PortBinding;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Starts containers for integration tests, waits for them to become ready, and describes them in
+ * project properties:
+ * <tt>dockerfile.container.NAME.id</tt>, <tt>dockerfile.container.NAME.host</tt> and
+ * <tt>dockerfile.container.NAME.port.PORT</tt> for each published port.  The containers share a
+ * network of the project, on which they reach each other by their names.  Containers left over by
+ * earlier runs are removed, unless <tt>reuse</tt> is set and they still run the same image with
+ * the same configuration, in which case they are kept.
+ */
+@Mojo(name = "start",
+    defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST,
+    requiresProject = true,
+    requiresDependencyResolution = ResolutionScope.TEST,
+    threadSafe = true)
+public class StartMojo extends AbstractDockerMojo {
+
+  /**
+   * The containers to start.
+   */
+  @Parameter
+  private List<ContainerSpec> containers;
+
+  /**
+   * Whether to keep containers running between builds.  A running container is reused if its
+   * image ID and configuration have not changed, and the <tt>stop</tt> goal leaves it running.
+   */
+  @Parameter(property = "dockerfile.containers.reuse", defaultValue = "false")
+  private boolean reuse;
+
+  /**
+   * How long to wait, in seconds, for all containers to become ready.  Containers are waited on
+   * at the same time: a container is ready when it is running, its healthcheck (if any) reports
+   * it healthy, and its <tt>waitForLog</tt> and <tt>waitForPort</tt> conditions (if set) hold.
+   */
+  @Parameter(property = "dockerfile.containers.readyTimeout", defaultValue = "120")
+  private long readyTimeout;
+
+  /**
+   * Disables the start goal; it becomes a no-op.
+   */
+  @Parameter(property = "dockerfile.start.skip", defaultValue = "false")
+  private boolean skipStart;
+
+  @Override
+  protected void execute(DockerClient dockerClient)
+      throws MojoExecutionException, MojoFailureException {
+    final Log log = getLog();
+
+    if (skipStart) {
+      log.info("Skipping execution because 'dockerfile.start.skip' is set");
+      return;
+    }
+    if (containers == null || containers.isEmpty()) {
+      log.info("No containers to start");
+      return;
+    }
+
+    final String coordinates = BuildMojo.projectCoordinates(project);
+    try {
+      final Map<String, List<Container>> existing = new HashMap<>();
+      for (Container container : Containers.list(dockerClient, coordinates)) {
+        final String name = container.labels() == null
+                            ? null : container.labels().get(Containers.NAME_LABEL);
+        if (!existing.containsKey(name)) {
+          existing.put(name, new ArrayList<Container>());
+        }
+        existing.get(name).add(container);
+      }
+
+      Containers.createNetwork(dockerClient, log, coordinates);
+
+      final List<ContainerReadiness.Target> targets = new ArrayList<>();
+      for (ContainerSpec spec : containers) {
+        if (spec.getName() == null) {
+          throw new MojoFailureException("Every container needs a name");
+        }
+        final List<Container> previous = existing.remove(spec.getName());
+        final String containerId = start(dockerClient, log, coordinates, spec,
+            previous == null ? Collections.<Container>emptyList() : previous);
+        targets.add(publish(dockerClient, spec, containerId));
+      }
+
+      // Containers that are no longer configured
+      for (List<Container> stale : existing.values()) {
+        for (Container container : stale) {
+          Containers.remove(dockerClient, log, container);
+        }
+      }
+
+      final long start = System.nanoTime();
+      try (ContainerReadiness readiness = new ContainerReadiness(dockerClient, log)) {
+        readiness.await(targets, TimeUnit.SECONDS.toMillis(readyTimeout));
+      }
+      log.info(MessageFormat.format("All containers ready after {0} ms",
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    } catch (DockerException | InterruptedException e) {
+      throw new MojoExecutionException("Could not start containers", e);
+    }
+  }
+
+  /**
+   * Starts the container of a spec, or reuses one of the previous containers with that name.
+   *
+   * @return the ID of the container
+   */
+  @Nonnull
+  private String start(@Nonnull DockerClient dockerClient,
+                       @Nonnull Log log,
+                       @Nonnull String coordinates,
+                       @Nonnull ContainerSpec spec,
+                       @Nonnull List<Container> previous)
+      throws MojoExecutionException, MojoFailureException, DockerException,
+             InterruptedException {
+    final String imageId = resolveImageId(dockerClient, spec);
+    final String network = Containers.network(coordinates);
+    final String configHash = configHash(spec, imageId, network);
+
+    String reused = null;
+    for (Container container : previous) {
+      if (reused == null && reuse
+          && isReusable(container.state(), container.labels(), configHash)) {
+        reused = container.id();
+      } else {
+        Containers.remove(dockerClient, log, container);
+      }
+    }
+    if (reused != null) {
+      log.info(MessageFormat.format("Reusing container {0} ({1})", spec.getName(), reused));
+      return reused;
+    }
+
+    final Map<String, String> labels = new HashMap<>();
+    labels.put(Containers.PROJECT_LABEL, coordinates);
+    labels.put(Containers.NAME_LABEL, spec.getName());
+    labels.put(Containers.CONFIG_LABEL, configHash);
+
+    final List<String> env = new ArrayList<>();
+    for (Map.Entry<String, String> variable : spec.getEnv().entrySet()) {
+      env.add(variable.getKey() + "=" + variable.getValue());
+    }
+
+    final Set<String> exposedPorts = new LinkedHashSet<>();
+    final Map<String, List<PortBinding>> portBindings = new HashMap<>();
+    for (String port : spec.getPorts()) {
+      exposedPorts.add(normalizePort(port));
+      portBindings.put(normalizePort(port),
+          Collections.singletonList(PortBinding.randomPort("0.0.0.0")));
+    }
+
+    final ContainerConfig.Builder config = ContainerConfig.builder()
+        .image(imageId)
+        .labels(labels)
+        .env(env)
+        .exposedPorts(exposedPorts)
+        .hostConfig(HostConfig.builder().portBindings(portBindings).networkMode(network).build())
+        .networkingConfig(ContainerConfig.NetworkingConfig.create(Collections.singletonMap(
+            network,
+            EndpointConfig.builder().aliases(Collections.singletonList(spec.getName())).build())));
+    if (!spec.getCommand().isEmpty()) {
+      config.cmd(spec.getCommand());
+    }
+
+    log.info(MessageFormat.format("Starting container {0} from image {1}", spec.getName(),
+        imageId));
+    final String containerId = dockerClient.createContainer(config.build()).id();
+    dockerClient.startContainer(containerId);
+    return containerId;
+  }
+
+  /**
+   * Sets the project properties that describe a running container.
+   *
+   * @return what to wait for before the container counts as ready
+   */
+  @Nonnull
+  private ContainerReadiness.Target publish(@Nonnull DockerClient dockerClient,
+                                            @Nonnull ContainerSpec spec,
+                                            @Nonnull String containerId)
+      throws MojoFailureException, DockerException, InterruptedException {
+    final Properties properties = project.getProperties();
+    final String prefix = "dockerfile.container." + spec.getName() + ".";
+    properties.setProperty(prefix + "id", containerId);
+    properties.setProperty(prefix + "host", dockerClient.getHost());
+
+    final Map<String, List<PortBinding>> ports =
+        dockerClient.inspectContainer(containerId).networkSettings().ports();
+    InetSocketAddress probeAddress = null;
+    for (String port : spec.getPorts()) {
+      final List<PortBinding> bindings = ports == null ? null : ports.get(normalizePort(port));
+      if (bindings != null && !bindings.isEmpty()) {
+        final String hostPort = bindings.get(0).hostPort();
+        properties.setProperty(prefix + "port." + port, hostPort);
+        if (port.equals(spec.getWaitForPort())) {
+          probeAddress = new InetSocketAddress(dockerClient.getHost(), Integer.parseInt(hostPort));
+        }
+      }
+    }
+    if (spec.getWaitForPort() != null && probeAddress == null) {
+      throw new MojoFailureException(MessageFormat.format(
+          "Can't wait for port {0} of container {1}; it is not one of its published ports",
+          spec.getWaitForPort(), spec.getName()));
+    }
+
+    return new ContainerReadiness.Target(spec.getName(), containerId,
+        spec.getWaitForLog() == null ? null : Pattern.compile(spec.getWaitForLog()),
+        probeAddress);
+  }
+
+  /**
+   * Finds the ID of the image to run: the image of a <tt>docker-info</tt> dependency, the given
+   * image name, or the image built by this project.
+   */
+  @Nonnull
+  private String resolveImageId(@Nonnull DockerClient dockerClient, @Nonnull ContainerSpec spec)
+      throws MojoExecutionException, MojoFailureException, DockerException,
+             InterruptedException {
+    String image = spec.getImage();
+    if (image == null) {
+      image = readMetadata(Metadata.IMAGE_ID);
+      if (image == null) {
+        throw new MojoFailureException(MessageFormat.format(
+            "Can't start container {0}; image ID not known (run the build goal before)",
+            spec.getName()));
+      }
+    } else {
+      final String dependencyImage = readDependencyImage(image);
+      if (dependencyImage != null) {
+        image = dependencyImage;
+      }
+    }
+
+    try {
+      return dockerClient.inspectImage(image).id();
+    } catch (ImageNotFoundException e) {
+      throw new MojoFailureException(MessageFormat.format(
+          "Can't start container {0}; image {1} does not exist", spec.getName(), image), e);
+    }
+  }
+
+  /**
+   * Reads the image ID, or failing that the image name, from a <tt>docker-info</tt> dependency.
+   *
+   * @return the image, or null if there is no such dependency
+   */
+  @Nullable
+  private String readDependencyImage(@Nonnull String coordinates) throws MojoExecutionException {
+    for (Artifact artifact : project.getArtifacts()) {
+      if (!"docker-info".equals(artifact.getType()) || artifact.getFile() == null
+          || !coordinates.equals(artifact.getGroupId() + ":" + artifact.getArtifactId())) {
+        continue;
+      }
+      final String directory = MessageFormat.format("META-INF/docker/{0}/{1}/",
+          artifact.getGroupId(), artifact.getArtifactId());
+      try {
+        for (Metadata metadata : new Metadata[] {Metadata.IMAGE_ID, Metadata.IMAGE_NAME}) {
+          final String value =
+              readEntry(artifact.getFile(), directory + metadata.getFileName());
+          if (value != null) {
+            return value;
+          }
+        }
+      } catch (IOException e) {
+        throw new MojoExecutionException("Could not read Docker info from " + artifact, e);
+      }
+      throw new MojoExecutionException(
+          MessageFormat.format("{0} does not describe an image", artifact));
+    }
+    return null;
+  }
+
+  @Nullable
+  private static String readEntry(@Nonnull File file, @Nonnull String name) throws IOException {
+    if (file.isDirectory()) {
+      return MetadataFiles.read(new File(file, name).toPath());
+    }
+    try (ZipFile zip = new ZipFile(file)) {
+      final ZipEntry entry = zip.getEntry(name);
+      if (entry == null) {
+        return null;
+      }
+      try (InputStream in = zip.getInputStream(entry);
+           Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+        return scanner.hasNextLine() ? scanner.nextLine().trim() : null;
+      }
+    }
+  }
+
+  /**
+   * Whether a container left over by an earlier run can be used instead of starting a new one.
+   */
+  static boolean isReusable(@Nullable String state,
+                            @Nullable Map<String, String> labels,
+                            @Nonnull String configHash) {
+    return "running".equals(state) && labels != null
+           && configHash.equals(labels.get(Containers.CONFIG_LABEL));
+  }
+
+  /**
+   * A hash of everything a container is created with, so that a container is only reused if it
+   * would be created the same way again.
+   */
+  @Nonnull
+  static String configHash(@Nonnull ContainerSpec spec,
+                           @Nonnull String imageId,
+                           @Nonnull String network) {
+    final Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putString(imageId, StandardCharsets.UTF_8).putByte((byte) 0);
+    hasher.putString(network, StandardCharsets.UTF_8).putByte((byte) 0);
+    for (Map.Entry<String, String> variable : new TreeMap<>(spec.getEnv()).entrySet()) {
+      hasher.putString(variable.getKey() + "=" + variable.getValue(), StandardCharsets.UTF_8)
+          .putByte((byte) 0);
+    }
+    hasher.putByte((byte) 1);
+    for (String port : spec.getPorts()) {
+      hasher.putString(normalizePort(port), StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    hasher.putByte((byte) 1);
+    for (String argument : spec.getCommand()) {
+      hasher.putString(argument, StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
+
+  @Nonnull
+  private static String normalizePort(@Nonnull String port) {
+    return port.contains("/") ? port : port + "/tcp";
+  }
+}
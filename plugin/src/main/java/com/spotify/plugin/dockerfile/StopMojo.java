@@ -0,0 +1,83 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Container;
+import java.text.MessageFormat;
+import java.util.List;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Stops and removes the containers started by the <tt>start</tt> goal and their network, unless
+ * they are to be reused by the next build.
+ */
+@Mojo(name = "stop",
+    defaultPhase = LifecyclePhase.POST_INTEGRATION_TEST,
+    requiresProject = true,
+    threadSafe = true)
+public class StopMojo extends AbstractDockerMojo {
+
+  /**
+   * Whether to keep containers running so that the next build can reuse them.
+   */
+  @Parameter(property = "dockerfile.containers.reuse", defaultValue = "false")
+  private boolean reuse;
+
+  /**
+   * Disables the stop goal; it becomes a no-op.
+   */
+  @Parameter(property = "dockerfile.stop.skip", defaultValue = "false")
+  private boolean skipStop;
+
+  @Override
+  protected void execute(DockerClient dockerClient)
+      throws MojoExecutionException, MojoFailureException {
+    final Log log = getLog();
+
+    if (skipStop) {
+      log.info("Skipping execution because 'dockerfile.stop.skip' is set");
+      return;
+    }
+
+    final String coordinates = BuildMojo.projectCoordinates(project);
+    try {
+      final List<Container> containers = Containers.list(dockerClient, coordinates);
+      if (reuse) {
+        log.info(MessageFormat.format(
+            "Keeping {0} container(s) running for reuse", containers.size()));
+        return;
+      }
+      for (Container container : containers) {
+        Containers.remove(dockerClient, log, container);
+      }
+      Containers.removeNetwork(dockerClient, log, coordinates);
+    } catch (DockerException | InterruptedException e) {
+      throw new MojoExecutionException("Could not stop containers", e);
+    }
+  }
+}
@@ -20,10 +20,22 @@
 
 package com.spotify.plugin.dockerfile;
 
+import com.google.common.base.Joiner;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -51,6 +63,12 @@ public class TagMojo extends AbstractDockerMojo {
   @Parameter(property = "dockerfile.tag", defaultValue = "latest", required = true)
   private String tag;
 
+  /**
+   * Additional tags to apply to the built image, in the same repository.
+   */
+  @Parameter(property = "dockerfile.tags")
+  private List<String> tags;
+
   /**
    * Whether to force re-assignment of an already assigned tag.
    */
@@ -74,20 +92,70 @@ public class TagMojo extends AbstractDockerMojo {
     }
 
     final String imageId = readMetadata(Metadata.IMAGE_ID);
-    final String imageName = formatImageName(repository, tag);
-
-    final String message =
-        MessageFormat.format("Tagging image {0} as {1}", imageId, imageName);
-    log.info(message);
-
+    if (imageId == null) {
+      throw new MojoFailureException(
+          "Can't tag image; image ID not known (run the build goal before)");
+    }
     try {
-      dockerClient.tag(imageId, imageName, force);
+      dockerClient.inspectImage(imageId);
+    } catch (ImageNotFoundException e) {
+      throw new MojoFailureException(
+          MessageFormat.format("Can't tag image; image {0} does not exist", imageId), e);
     } catch (DockerException | InterruptedException e) {
-      throw new MojoExecutionException("Could not tag Docker image", e);
+      throw new MojoExecutionException("Could not inspect Docker image " + imageId, e);
     }
 
+    final Set<String> allTags = new LinkedHashSet<>();
+    allTags.add(tag);
+    if (tags != null) {
+      allTags.addAll(tags);
+    }
+    applyTags(dockerClient, log, imageId, allTags);
+
+    writeMetadata(Metadata.TAGS, Joiner.on(',').join(allTags));
     writeImageInfo(repository, tag);
 
     writeMetadata(log);
   }
+
+  private void applyTags(final DockerClient dockerClient,
+                         final Log log,
+                         final String imageId,
+                         Set<String> allTags)
+      throws MojoExecutionException {
+    final ExecutorService executor = DockerThreads.newFixedPool("dockerfile-tag", allTags.size());
+    try {
+      final Map<String, Future<Void>> tagged = new LinkedHashMap<>();
+      for (String each : allTags) {
+        final String imageName = formatImageName(repository, each);
+        tagged.put(imageName, executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            log.info(MessageFormat.format("Tagging image {0} as {1}", imageId, imageName));
+            dockerClient.tag(imageId, imageName, force);
+            return null;
+          }
+        }));
+      }
+
+      final List<String> failures = new ArrayList<>();
+      for (Map.Entry<String, Future<Void>> tagging : tagged.entrySet()) {
+        try {
+          tagging.getValue().get();
+        } catch (ExecutionException e) {
+          log.error(MessageFormat.format("Could not tag image {0} as {1}", imageId,
+              tagging.getKey()), e.getCause());
+          failures.add(tagging.getKey());
+        }
+      }
+      if (!failures.isEmpty()) {
+        throw new MojoExecutionException("Could not tag Docker image as " + failures);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while tagging Docker image", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
@@ -0,0 +1,193 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import com.spotify.docker.client.DockerClient;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Builds the image, then watches the build context and rebuilds the image whenever files that
+ * are part of the build change, until Maven is stopped.  The Docker client and the index of the
+ * build context are kept for the whole session, so a rebuild only hashes the files that changed.
+ */
+@Mojo(name = "watch",
+    requiresProject = true,
+    threadSafe = true)
+public class WatchMojo extends BuildMojo {
+
+  /**
+   * How long the build context has to be quiet, in milliseconds, before a burst of file changes
+   * triggers a rebuild.
+   */
+  @Parameter(property = "dockerfile.watch.debounceMillis", defaultValue = "500")
+  private long debounceMillis;
+
+  @Override
+  public void execute(DockerClient dockerClient)
+      throws MojoExecutionException, MojoFailureException {
+    final Log log = getLog();
+
+    if (skipBuild()) {
+      log.info("Skipping execution because 'dockerfile.build.skip' is set");
+      return;
+    }
+
+    String builtFingerprint = fingerprint(dockerfilePath());
+    rebuild(dockerClient);
+
+    final Path context = contextPath().toAbsolutePath().normalize();
+    try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+      final Map<WatchKey, Path> directories = new HashMap<>();
+      register(watchService, directories, context);
+      log.info(MessageFormat.format("Watching {0} for changes, press Ctrl-C to stop", context));
+
+      while (true) {
+        if (awaitChanges(watchService, directories)) {
+          builtFingerprint = rebuildIfChanged(dockerClient, log, builtFingerprint);
+        }
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException("Could not watch build context " + context, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.info("Stopped watching");
+    }
+  }
+
+  /**
+   * Rebuilds the image if files that are part of the build changed since it was built.  A failed
+   * rebuild is only logged, so that watching continues.
+   *
+   * @param builtFingerprint the fingerprint of the last image that was built
+   * @return the fingerprint of the last image that was built after this
+   */
+  @Nonnull
+  String rebuildIfChanged(@Nonnull DockerClient dockerClient,
+                          @Nonnull Log log,
+                          @Nonnull String builtFingerprint) throws MojoExecutionException {
+    // Changes to files excluded by .dockerignore leave the fingerprint as it is
+    final String fingerprint = fingerprint(dockerfilePath());
+    if (fingerprint.equals(builtFingerprint)) {
+      log.debug("Changes do not affect the build, not rebuilding");
+      return builtFingerprint;
+    }
+
+    log.info("Build context changed, rebuilding");
+    try {
+      rebuild(dockerClient);
+      return fingerprint;
+    } catch (MojoExecutionException | MojoFailureException e) {
+      log.error("Rebuild failed, waiting for further changes", e);
+      return builtFingerprint;
+    }
+  }
+
+  /**
+   * Builds the image and writes its metadata, like the build goal.
+   */
+  void rebuild(@Nonnull DockerClient dockerClient)
+      throws MojoExecutionException, MojoFailureException {
+    super.execute(dockerClient);
+  }
+
+  /**
+   * Waits for file events and then for the context to be quiet for <tt>debounceMillis</tt>,
+   * registering new directories as they appear.
+   *
+   * @return whether any file in the context changed
+   */
+  private boolean awaitChanges(@Nonnull WatchService watchService,
+                               @Nonnull Map<WatchKey, Path> directories)
+      throws IOException, InterruptedException {
+    WatchKey key = watchService.take();
+    boolean changed = false;
+    while (key != null) {
+      final Path directory = directories.get(key);
+      for (WatchEvent<?> event : key.pollEvents()) {
+        changed = true;
+        if (event.kind() == OVERFLOW || directory == null) {
+          continue;
+        }
+        final Path child = directory.resolve((Path) event.context());
+        if (event.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+          register(watchService, directories, child);
+        }
+      }
+      if (!key.reset()) {
+        directories.remove(key);
+      }
+      key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+    }
+    return changed;
+  }
+
+  private void register(@Nonnull final WatchService watchService,
+                        @Nonnull final Map<WatchKey, Path> directories,
+                        @Nonnull Path root) throws IOException {
+    // The metadata written by each build must not trigger the next one
+    final List<Path> excludes = new ArrayList<>();
+    for (Path generated : generatedPaths()) {
+      excludes.add(generated.toAbsolutePath().normalize());
+    }
+
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+          throws IOException {
+        final Path normalized = dir.toAbsolutePath().normalize();
+        for (Path exclude : excludes) {
+          if (normalized.startsWith(exclude)) {
+            return FileVisitResult.SKIP_SUBTREE;
+          }
+        }
+        directories.put(
+            dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
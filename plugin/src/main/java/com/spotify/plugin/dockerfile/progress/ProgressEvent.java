@@ -0,0 +1,250 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile.progress;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Something that happened during a Docker operation.
+ */
+public abstract class ProgressEvent {
+
+  /**
+   * The kind of operation an event belongs to.
+   */
+  public enum Operation {
+    BUILD,
+    PULL,
+    PUSH
+  }
+
+  private final Operation operation;
+  private final String image;
+  private final long timestamp;
+
+  ProgressEvent(@Nonnull Operation operation, @Nullable String image) {
+    this.operation = operation;
+    this.image = image;
+    this.timestamp = System.currentTimeMillis();
+  }
+
+  @Nonnull
+  public Operation getOperation() {
+    return operation;
+  }
+
+  /**
+   * Returns the name of the image being built, pulled or pushed, or null for a build without a
+   * name.
+   */
+  @Nullable
+  public String getImage() {
+    return image;
+  }
+
+  /**
+   * Returns when the event was received, in milliseconds since the epoch.
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * A line of output, such as the output of a build step or a status message of the daemon.
+   */
+  public static final class Output extends ProgressEvent {
+    private final String line;
+
+    public Output(@Nonnull Operation operation, @Nullable String image, @Nonnull String line) {
+      super(operation, image);
+      this.line = line;
+    }
+
+    @Nonnull
+    public String getLine() {
+      return line;
+    }
+  }
+
+  /**
+   * A step of a build, that is an instruction of the Dockerfile, started.
+   */
+  public static final class BuildStepStarted extends ProgressEvent {
+    private final int step;
+    private final int totalSteps;
+    private final String instruction;
+
+    public BuildStepStarted(@Nullable String image,
+                            int step,
+                            int totalSteps,
+                            @Nonnull String instruction) {
+      super(Operation.BUILD, image);
+      this.step = step;
+      this.totalSteps = totalSteps;
+      this.instruction = instruction;
+    }
+
+    /**
+     * Returns the number of the step, starting at 1.
+     */
+    public int getStep() {
+      return step;
+    }
+
+    /**
+     * Returns the number of steps of the build, or 0 if the daemon did not report it.
+     */
+    public int getTotalSteps() {
+      return totalSteps;
+    }
+
+    @Nonnull
+    public String getInstruction() {
+      return instruction;
+    }
+  }
+
+  /**
+   * A step of a build finished, because the next one started or the image was built.
+   */
+  public static final class BuildStepFinished extends ProgressEvent {
+    private final int step;
+    private final String layerId;
+
+    public BuildStepFinished(@Nullable String image, int step, @Nullable String layerId) {
+      super(Operation.BUILD, image);
+      this.step = step;
+      this.layerId = layerId;
+    }
+
+    public int getStep() {
+      return step;
+    }
+
+    /**
+     * Returns the ID of the image the step produced, as reported by the daemon, or null if it
+     * reported none.
+     */
+    @Nullable
+    public String getLayerId() {
+      return layerId;
+    }
+  }
+
+  /**
+   * Progress of a layer being pulled or pushed, including the layers of base images pulled during
+   * a build.
+   */
+  public static final class LayerProgress extends ProgressEvent {
+    private final String layerId;
+    private final String status;
+    private final Long current;
+    private final Long total;
+    private final String progressBar;
+
+    public LayerProgress(@Nonnull Operation operation,
+                         @Nullable String image,
+                         @Nullable String layerId,
+                         @Nullable String status,
+                         @Nullable Long current,
+                         @Nullable Long total,
+                         @Nullable String progressBar) {
+      super(operation, image);
+      this.layerId = layerId;
+      this.status = status;
+      this.current = current;
+      this.total = total;
+      this.progressBar = progressBar;
+    }
+
+    @Nullable
+    public String getLayerId() {
+      return layerId;
+    }
+
+    /**
+     * Returns the status of the layer, such as <tt>Downloading</tt> or <tt>Pushed</tt>.
+     */
+    @Nullable
+    public String getStatus() {
+      return status;
+    }
+
+    /**
+     * Returns the number of bytes transferred so far, if known.
+     */
+    @Nullable
+    public Long getCurrent() {
+      return current;
+    }
+
+    /**
+     * Returns the size of the layer in bytes, if known.
+     */
+    @Nullable
+    public Long getTotal() {
+      return total;
+    }
+
+    /**
+     * Returns the progress as formatted for display by the daemon, if any.
+     */
+    @Nullable
+    public String getProgressBar() {
+      return progressBar;
+    }
+  }
+
+  /**
+   * A build produced an image.
+   */
+  public static final class ImageBuilt extends ProgressEvent {
+    private final String imageId;
+
+    public ImageBuilt(@Nullable String image, @Nonnull String imageId) {
+      super(Operation.BUILD, image);
+      this.imageId = imageId;
+    }
+
+    @Nonnull
+    public String getImageId() {
+      return imageId;
+    }
+  }
+
+  /**
+   * The daemon reported an error; the operation fails.
+   */
+  public static final class Failure extends ProgressEvent {
+    private final String message;
+
+    public Failure(@Nonnull Operation operation, @Nullable String image, @Nonnull String message) {
+      super(operation, image);
+      this.message = message;
+    }
+
+    @Nonnull
+    public String getMessage() {
+      return message;
+    }
+  }
+}
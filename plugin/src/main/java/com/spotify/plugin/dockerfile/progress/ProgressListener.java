@@ -0,0 +1,37 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile.progress;
+
+/**
+ * Receives progress of the Docker operations run by the plugin, such as builds, pulls and pushes.
+ *
+ * <p>Listeners are found with {@link java.util.ServiceLoader}: add a JAR with an implementation
+ * and a <tt>META-INF/services/com.spotify.plugin.dockerfile.progress.ProgressListener</tt> file
+ * as a dependency of the plugin.  Listeners may be called from several threads at the same time,
+ * and should return quickly, since they are called on the thread reading the daemon's response.
+ */
+public interface ProgressListener {
+
+  /**
+   * Called for each event; see the subclasses of {@link ProgressEvent} for the kinds of events.
+   */
+  void onEvent(ProgressEvent event);
+}
@@ -0,0 +1,67 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import java.io.File;
+import java.lang.reflect.Field;
+
+/**
+ * Configures goals for tests that run them without Maven.
+ */
+final class Mojos {
+
+  private Mojos() {
+  }
+
+  /**
+   * Sets a parameter of a goal, declared by its class or any of its superclasses.
+   */
+  static void set(Object mojo, String name, Object value) throws ReflectiveOperationException {
+    for (Class<?> type = mojo.getClass(); type != null; type = type.getSuperclass()) {
+      try {
+        final Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(mojo, value);
+        return;
+      } catch (NoSuchFieldException e) {
+        // Declared further up
+      }
+    }
+    throw new NoSuchFieldException(name);
+  }
+
+  /**
+   * Points the directories of a goal into a project in <tt>basedir</tt> with the default layout,
+   * using <tt>basedir</tt> as the build context.
+   */
+  static void setProjectDirectories(AbstractDockerMojo mojo, File basedir)
+      throws ReflectiveOperationException {
+    final File target = new File(basedir, "target");
+    set(mojo, "buildDirectory", target);
+    set(mojo, "dockerInfoDirectory", new File(target, "docker"));
+    set(mojo, "testOutputDirectory", new File(target, "test-classes"));
+    set(mojo, "finalName", "app-1.0");
+    if (mojo instanceof BuildMojo) {
+      set(mojo, "contextDirectory", basedir);
+      set(mojo, "lockFile", new File(basedir, "docker.lock"));
+    }
+  }
+}
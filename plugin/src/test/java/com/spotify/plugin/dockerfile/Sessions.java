@@ -0,0 +1,63 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import com.spotify.docker.client.DockerClient;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+
+/**
+ * Maven sessions and Docker clients for tests that don't talk to a daemon.
+ */
+final class Sessions {
+
+  private Sessions() {
+  }
+
+  @SuppressWarnings("deprecation")
+  static MavenSession newSession() {
+    return new MavenSession(null, new DefaultRepositorySystemSession(),
+        new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult());
+  }
+
+  /**
+   * Returns a client that counts how often it was closed and fails on any other call.
+   */
+  static DockerClient closeCountingClient(final AtomicInteger closed) {
+    return (DockerClient) Proxy.newProxyInstance(DockerClient.class.getClassLoader(),
+        new Class<?>[] {DockerClient.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("close".equals(method.getName())) {
+              closed.incrementAndGet();
+              return null;
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+}
@@ -0,0 +1,88 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBuildFingerprint {
+
+  private File basedir;
+  private BuildMojo mojo;
+
+  @Before
+  public void setUp() throws Exception {
+    basedir = Files.createTempDirectory("fingerprint").toFile();
+    write(basedir.toPath().resolve("Dockerfile"), "FROM scratch\nCOPY src /src\n");
+    write(basedir.toPath().resolve("src/hello.txt"), "hello");
+    // Like in a real build, which compiles the project before building the image
+    write(basedir.toPath().resolve("target/app-1.0.jar"), "jar");
+    mojo = new BuildMojo();
+    Mojos.setProjectDirectories(mojo, basedir);
+  }
+
+  @After
+  public void tearDown() {
+    delete(basedir);
+  }
+
+  @Test
+  public void testSizeReportDoesNotChangeFingerprint() throws Exception {
+    final String fingerprint = mojo.fingerprint(null);
+
+    write(mojo.imageSizeReport(), "{\"imageId\": \"sha256:1234\", \"size\": 1}");
+    assertEquals(fingerprint, mojo.fingerprint(null));
+    write(mojo.imageSizeReport(), "{\"imageId\": \"sha256:5678\", \"size\": 2}");
+    assertEquals(fingerprint, mojo.fingerprint(null));
+  }
+
+  @Test
+  public void testContextChangeChangesFingerprint() throws Exception {
+    final String fingerprint = mojo.fingerprint(null);
+
+    write(basedir.toPath().resolve("src/hello.txt"), "hello again");
+    assertNotEquals(fingerprint, mojo.fingerprint(null));
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void delete(File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,75 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+
+public class TestContainerReadiness {
+
+  private static Map<String, CompletableFuture<Void>> pending() {
+    final Map<String, CompletableFuture<Void>> pending = new HashMap<>();
+    pending.put("running", new CompletableFuture<Void>());
+    pending.put("healthcheck", new CompletableFuture<Void>());
+    return pending;
+  }
+
+  @Test
+  public void testHealthyCompletesHealthcheck() {
+    final Map<String, CompletableFuture<Void>> pending = pending();
+    ContainerReadiness.onEvent(pending, "health_status: healthy");
+
+    assertTrue(pending.get("healthcheck").isDone());
+    assertFalse(pending.get("healthcheck").isCompletedExceptionally());
+    assertFalse(pending.get("running").isDone());
+  }
+
+  @Test
+  public void testUnhealthyFailsHealthcheck() {
+    final Map<String, CompletableFuture<Void>> pending = pending();
+    ContainerReadiness.onEvent(pending, "health_status: unhealthy");
+
+    assertTrue(pending.get("healthcheck").isCompletedExceptionally());
+    assertFalse(pending.get("running").isDone());
+  }
+
+  @Test
+  public void testDieFailsEveryCondition() {
+    final Map<String, CompletableFuture<Void>> pending = pending();
+    ContainerReadiness.onEvent(pending, "die");
+
+    assertTrue(pending.get("healthcheck").isCompletedExceptionally());
+    assertTrue(pending.get("running").isCompletedExceptionally());
+  }
+
+  @Test
+  public void testOtherEventsAreIgnored() {
+    final Map<String, CompletableFuture<Void>> pending = pending();
+    ContainerReadiness.onEvent(pending, "exec_start: sh");
+
+    assertFalse(pending.get("healthcheck").isDone());
+    assertFalse(pending.get("running").isDone());
+  }
+}
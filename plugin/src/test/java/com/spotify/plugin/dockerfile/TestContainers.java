@@ -0,0 +1,148 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.exceptions.NetworkNotFoundException;
+import com.spotify.docker.client.messages.Container;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+public class TestContainers {
+
+  @Test
+  public void testRemoveStopsRunningContainers() throws Exception {
+    final List<String> calls = new ArrayList<>();
+    Containers.remove(recording(calls, null), new SystemStreamLog(), "db", "c1", "running");
+
+    assertEquals(ImmutableList.of("stopContainer c1", "removeContainer c1"), calls);
+  }
+
+  @Test
+  public void testRemoveOnlyRemovesStoppedContainers() throws Exception {
+    final List<String> calls = new ArrayList<>();
+    Containers.remove(recording(calls, null), new SystemStreamLog(), "db", "c1", "exited");
+
+    assertEquals(ImmutableList.of("removeContainer c1"), calls);
+  }
+
+  @Test
+  public void testRemoveToleratesContainersThatAreGone() throws Exception {
+    final List<String> calls = new ArrayList<>();
+    Containers.remove(recording(calls, new ContainerNotFoundException("c1")),
+        new SystemStreamLog(), "db", "c1", "running");
+
+    assertEquals(ImmutableList.of("stopContainer c1"), calls);
+  }
+
+  @Test
+  public void testCreateNetworkOnlyIfMissing() throws Exception {
+    final List<String> calls = new ArrayList<>();
+    Containers.createNetwork(recording(calls, null), new SystemStreamLog(), "com.example:app");
+
+    assertEquals(ImmutableList.of("inspectNetwork dockerfile-com.example_app"), calls);
+
+    calls.clear();
+    Containers.createNetwork(recording(calls, new NetworkNotFoundException("inspect")),
+        new SystemStreamLog(), "com.example:app");
+
+    assertEquals(ImmutableList.of("inspectNetwork dockerfile-com.example_app", "createNetwork"),
+        calls);
+  }
+
+  @Test
+  public void testStopKeepsContainersForReuse() throws Exception {
+    final List<String> calls = new ArrayList<>();
+    final StopMojo mojo = stopMojo(true);
+    mojo.execute(recording(calls, null));
+
+    assertEquals(ImmutableList.of("listContainers"), calls);
+  }
+
+  @Test
+  public void testStopRemovesNetwork() throws Exception {
+    final List<String> calls = new ArrayList<>();
+    final StopMojo mojo = stopMojo(false);
+    mojo.execute(recording(calls, null));
+
+    assertEquals(
+        ImmutableList.of("listContainers", "removeNetwork dockerfile-com.example_app"), calls);
+  }
+
+  @Test
+  public void testSkippedStopDoesNothing() throws Exception {
+    final List<String> calls = new ArrayList<>();
+    final StopMojo mojo = stopMojo(false);
+    set(mojo, "skipStop", true);
+    mojo.execute(recording(calls, null));
+
+    assertEquals(Collections.<String>emptyList(), calls);
+  }
+
+  private static StopMojo stopMojo(boolean reuse) throws Exception {
+    final Model model = new Model();
+    model.setGroupId("com.example");
+    model.setArtifactId("app");
+    final StopMojo mojo = new StopMojo();
+    mojo.project = new MavenProject(model);
+    set(mojo, "reuse", reuse);
+    return mojo;
+  }
+
+  private static void set(StopMojo mojo, String field, Object value) throws Exception {
+    final Field declared = StopMojo.class.getDeclaredField(field);
+    declared.setAccessible(true);
+    declared.set(mojo, value);
+  }
+
+  /**
+   * Returns a client that records its calls, lists no containers, and throws the given exception
+   * on calls that inspect, stop or remove something.
+   */
+  private static DockerClient recording(final List<String> calls, final Exception failure) {
+    return (DockerClient) Proxy.newProxyInstance(DockerClient.class.getClassLoader(),
+        new Class<?>[] {DockerClient.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+            final String name = method.getName();
+            calls.add(args != null && args.length > 0 && args[0] instanceof String
+                      ? name + " " + args[0] : name);
+            if (failure != null && (name.startsWith("inspect") || name.startsWith("stop")
+                                    || name.startsWith("remove"))) {
+              throw failure;
+            }
+            return "listContainers".equals(name) ? Collections.<Container>emptyList() : null;
+          }
+        });
+  }
+}
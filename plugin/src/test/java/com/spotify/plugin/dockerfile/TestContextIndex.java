@@ -0,0 +1,125 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestContextIndex {
+
+  private Path context;
+
+  @Before
+  public void createContext() throws IOException {
+    context = Files.createTempDirectory("context");
+    write("Dockerfile", "FROM scratch\n");
+    write("app/main.txt", "main");
+    write("app/debug.log", "log");
+  }
+
+  @After
+  public void deleteContext() {
+    delete(context.toFile());
+  }
+
+  @Test
+  public void testScanAppliesDockerIgnoreAndExcludes() throws IOException {
+    write(".dockerignore", "**/*.log\n");
+    write("target/docker/image-id", "sha256:1234");
+
+    final ContextIndex index = ContextIndex.scan(context,
+        ImmutableList.of(context.resolve("target")), null);
+
+    assertEquals(
+        ImmutableList.of(".dockerignore", "Dockerfile", "app/", "app/main.txt"),
+        ImmutableList.copyOf(index.entries().keySet()));
+  }
+
+  @Test
+  public void testRescanReusesDigestsOfUnchangedFiles() throws IOException {
+    final ContextIndex first = ContextIndex.scan(context, Collections.<Path>emptyList(), null);
+    final ContextIndex second = ContextIndex.scan(context, Collections.<Path>emptyList(), first);
+
+    assertSame(first.entries().get("app/main.txt"), second.entries().get("app/main.txt"));
+    assertEquals(first.digest(), second.digest());
+
+    // Same size and modification time: the file is not read again
+    final FileTime modified = Files.getLastModifiedTime(context.resolve("app/main.txt"));
+    write("app/main.txt", "MAIN");
+    Files.setLastModifiedTime(context.resolve("app/main.txt"), modified);
+    final ContextIndex third = ContextIndex.scan(context, Collections.<Path>emptyList(), second);
+
+    assertSame(second.entries().get("app/main.txt"), third.entries().get("app/main.txt"));
+  }
+
+  @Test
+  public void testRescanDigestsChangedFiles() throws IOException {
+    final ContextIndex first = ContextIndex.scan(context, Collections.<Path>emptyList(), null);
+    write("app/main.txt", "changed");
+    final ContextIndex second = ContextIndex.scan(context, Collections.<Path>emptyList(), first);
+
+    assertNotEquals(first.entries().get("app/main.txt"), second.entries().get("app/main.txt"));
+    assertNotEquals(first.digest(), second.digest());
+    assertSame(first.entries().get("Dockerfile"), second.entries().get("Dockerfile"));
+  }
+
+  @Test
+  public void testRescanNoticesAddedAndRemovedFiles() throws IOException {
+    final ContextIndex first = ContextIndex.scan(context, Collections.<Path>emptyList(), null);
+    Files.delete(context.resolve("app/debug.log"));
+    write("app/extra.txt", "extra");
+    final ContextIndex second = ContextIndex.scan(context, Collections.<Path>emptyList(), first);
+
+    assertFalse(second.entries().containsKey("app/debug.log"));
+    assertTrue(second.entries().containsKey("app/extra.txt"));
+    assertNotEquals(first.digest(), second.digest());
+  }
+
+  private void write(String relative, String content) throws IOException {
+    final Path file = context.resolve(relative);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void delete(File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
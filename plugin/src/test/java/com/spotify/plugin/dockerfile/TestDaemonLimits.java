@@ -0,0 +1,176 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.plugin.dockerfile.progress.ProgressEvent.Operation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+public class TestDaemonLimits {
+
+  @Test
+  public void testBuildsWaitForASlot() throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final DockerClient daemon = fakeDaemon(running, maxRunning);
+
+    final Map<Operation, Integer> limits = new EnumMap<>(Operation.class);
+    limits.put(Operation.BUILD, 2);
+    final DaemonLimits daemonLimits = new DaemonLimits();
+
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      final List<Future<String>> builds = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        // Each module gets its own client, as each goal execution does
+        final DockerClient client = daemonLimits.limit(daemon, limits, new SystemStreamLog());
+        builds.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            return client.build(Paths.get("."));
+          }
+        }));
+      }
+      for (Future<String> build : builds) {
+        assertEquals("sha256:1234", build.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertTrue("at most 2 builds ran at once, not " + maxRunning, maxRunning.get() <= 2);
+    assertEquals(0, running.get());
+  }
+
+  @Test
+  public void testDifferentLimitsShareTheSmallest() throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final DockerClient daemon = fakeDaemon(running, maxRunning);
+    final List<String> warnings = new ArrayList<>();
+    final SystemStreamLog log = new SystemStreamLog() {
+      @Override
+      public void warn(CharSequence content) {
+        warnings.add(content.toString());
+      }
+    };
+    final DaemonLimits daemonLimits = new DaemonLimits();
+
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      final List<Future<String>> builds = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        // Half of the modules allow 4 builds at a time, the other half 2
+        final DockerClient client = daemonLimits.limit(daemon,
+            Collections.singletonMap(Operation.BUILD, i % 2 == 0 ? 4 : 2), log);
+        builds.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            return client.build(Paths.get("."));
+          }
+        }));
+      }
+      for (Future<String> build : builds) {
+        assertEquals("sha256:1234", build.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertTrue("at most 2 builds ran at once, not " + maxRunning, maxRunning.get() <= 2);
+    assertEquals(0, running.get());
+    assertEquals(
+        "Modules limit concurrent builds differently (4 and 2); allowing 2 at a time",
+        warnings.get(0));
+  }
+
+  @Test
+  public void testModulesWithoutLimitsFollowOtherModules() throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final DockerClient daemon = fakeDaemon(running, maxRunning);
+    final DaemonLimits daemonLimits = new DaemonLimits();
+
+    // Created before any module limited builds
+    final DockerClient unlimited = daemonLimits.limit(daemon,
+        Collections.singletonMap(Operation.BUILD, 0), new SystemStreamLog());
+    daemonLimits.limit(daemon, Collections.singletonMap(Operation.BUILD, 1),
+        new SystemStreamLog());
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<String>> builds = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        builds.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            return unlimited.build(Paths.get("."));
+          }
+        }));
+      }
+      for (Future<String> build : builds) {
+        assertEquals("sha256:1234", build.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, maxRunning.get());
+  }
+
+  private static DockerClient fakeDaemon(final AtomicInteger running,
+                                         final AtomicInteger maxRunning) {
+    return (DockerClient) Proxy.newProxyInstance(DockerClient.class.getClassLoader(),
+        new Class<?>[] {DockerClient.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!"build".equals(method.getName())) {
+              throw new UnsupportedOperationException(method.getName());
+            }
+            final int now = running.incrementAndGet();
+            synchronized (maxRunning) {
+              maxRunning.set(Math.max(maxRunning.get(), now));
+            }
+            Thread.sleep(50);
+            running.decrementAndGet();
+            return "sha256:1234";
+          }
+        });
+  }
+}
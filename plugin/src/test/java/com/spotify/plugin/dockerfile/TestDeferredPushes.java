@@ -0,0 +1,199 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Splitter;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.lifecycle.DefaultLifecycles;
+import org.apache.maven.lifecycle.Lifecycle;
+import org.apache.maven.lifecycle.mapping.LifecyclePhase;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.Test;
+
+public class TestDeferredPushes {
+
+  @Test
+  public void testLastArrivalPushesAllImages() {
+    final DeferredPushes pushes = new DeferredPushes(new HashSet<>(Arrays.asList(
+        "com.example:a:jar:1@default", "com.example:b:jar:1@default",
+        "com.example:c:jar:1@default")));
+
+    assertNull(pushes.arrive("com.example:a:jar:1@default",
+        Arrays.asList("example/a:1", "example/a:latest")));
+    assertNull(pushes.arrive("com.example:b:jar:1@default", Collections.<String>emptyList()));
+    // The release goal hands over an unmodifiable list
+    final List<String> released = Splitter.on('\n').splitToList("example/c:1");
+    assertEquals(Arrays.asList("example/a:1", "example/a:latest", "example/c:1"),
+        pushes.arrive("com.example:c:jar:1@default", released));
+    assertEquals(Collections.singletonList("example/c:1"), released);
+  }
+
+  @Test
+  public void testExpectedExecutionsFollowRequestedPhasesAndGoals() {
+    final MavenProject first = project("first");
+    addExecution(first, "default", null, "build", "push");
+    addExecution(first, "early", "install", "push");
+    final MavenProject second = project("second");
+    addExecution(second, "build-only", null, "build");
+    addExecution(second, "late", "deploy", "push");
+    final MavenProject third = project("third");
+
+    final MavenSession session = Sessions.newSession();
+    session.setProjects(Arrays.asList(first, second, third));
+
+    session.getRequest().setGoals(Collections.singletonList("install"));
+    assertEquals(Collections.singleton("com.example:first:jar:1@early"),
+        DeferredPushes.expectedExecutions(session, lifecycles(), "push", "deploy"));
+
+    session.getRequest().setGoals(Arrays.asList("deploy", "dockerfile:push@extra"));
+    assertEquals(new HashSet<>(Arrays.asList(
+        "com.example:first:jar:1@default", "com.example:first:jar:1@early",
+        "com.example:second:jar:1@late", "com.example:first:jar:1@extra",
+        "com.example:second:jar:1@extra", "com.example:third:jar:1@extra")),
+        DeferredPushes.expectedExecutions(session, lifecycles(), "push", "deploy"));
+
+    session.getRequest().setGoals(Arrays.asList(
+        "com.spotify:dockerfile-maven-plugin:1.4.0:push", "other:push"));
+    assertEquals(new HashSet<>(Arrays.asList(
+        "com.example:first:jar:1@default-cli", "com.example:second:jar:1@default-cli",
+        "com.example:third:jar:1@default-cli")),
+        DeferredPushes.expectedExecutions(session, lifecycles(), "push", "deploy"));
+  }
+
+  @Test
+  public void testNothingIsPushedUnlessAllImagesExist() throws Exception {
+    final List<String> pushed = Collections.synchronizedList(new ArrayList<String>());
+    final DockerClient daemon = fakeDaemon(Collections.singleton("example/b:1"), pushed);
+
+    try {
+      DeferredPushes.pushAll(daemon, new SystemStreamLog(), false,
+          Arrays.asList("example/a:1", "example/b:1", "registry.example.com/c:1"), 2);
+      fail("Expected the push to fail");
+    } catch (MojoFailureException e) {
+      assertTrue(e.getMessage(), e.getMessage().endsWith("[example/b:1]"));
+    }
+    assertEquals(Collections.<String>emptyList(), pushed);
+
+    DeferredPushes.pushAll(daemon, new SystemStreamLog(), false,
+        Arrays.asList("example/a:1", "registry.example.com/c:1", "example/a:latest"), 2);
+    assertEquals(new HashSet<>(Arrays.asList(
+        "example/a:1", "registry.example.com/c:1", "example/a:latest")), new HashSet<>(pushed));
+  }
+
+  @Test
+  public void testRegistry() {
+    assertEquals("docker.io", DeferredPushes.registry("alpine"));
+    assertEquals("docker.io", DeferredPushes.registry("spotify/alpine:3"));
+    assertEquals("registry.example.com", DeferredPushes.registry("registry.example.com/a/b"));
+    assertEquals("localhost:5000", DeferredPushes.registry("localhost:5000/a"));
+    assertEquals("localhost", DeferredPushes.registry("localhost/a"));
+  }
+
+  private static MavenProject project(String artifactId) {
+    final MavenProject project = new MavenProject();
+    project.setGroupId("com.example");
+    project.setArtifactId(artifactId);
+    project.setVersion("1");
+    project.setPackaging("jar");
+    return project;
+  }
+
+  private static void addExecution(MavenProject project, String id, String phase,
+                                   String... goals) {
+    Plugin plugin = project.getPlugin("com.spotify:dockerfile-maven-plugin");
+    if (plugin == null) {
+      plugin = new Plugin();
+      plugin.setGroupId("com.spotify");
+      plugin.setArtifactId("dockerfile-maven-plugin");
+      project.getBuild().addPlugin(plugin);
+      // The model caches its plugins by key
+      project.getBuild().flushPluginMap();
+    }
+    final PluginExecution execution = new PluginExecution();
+    execution.setId(id);
+    execution.setPhase(phase);
+    execution.setGoals(Arrays.asList(goals));
+    plugin.addExecution(execution);
+  }
+
+  private static DefaultLifecycles lifecycles() {
+    final Map<String, Lifecycle> lifecycles = new HashMap<>();
+    lifecycles.put("default", new Lifecycle("default", Arrays.asList(
+        "validate", "compile", "test", "package", "verify", "install", "deploy"),
+        Collections.<String, LifecyclePhase>emptyMap()));
+    lifecycles.put("clean", new Lifecycle("clean", Arrays.asList(
+        "pre-clean", "clean", "post-clean"), Collections.<String, LifecyclePhase>emptyMap()));
+    lifecycles.put("site", new Lifecycle("site", Arrays.asList("pre-site", "site"),
+        Collections.<String, LifecyclePhase>emptyMap()));
+    lifecycles.put("wrapper", new Lifecycle("wrapper", Collections.singletonList("wrapper"),
+        Collections.<String, LifecyclePhase>emptyMap()));
+    return new DefaultLifecycles(lifecycles, new ConsoleLogger(Logger.LEVEL_DISABLED, "test"));
+  }
+
+  /**
+   * Returns a daemon that has every image but the missing ones, and records pushes.
+   */
+  private static DockerClient fakeDaemon(final Collection<String> missing,
+                                         final List<String> pushed) {
+    return (DockerClient) Proxy.newProxyInstance(DockerClient.class.getClassLoader(),
+        new Class<?>[] {DockerClient.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+              case "inspectImage":
+                if (missing.contains(args[0])) {
+                  throw new ImageNotFoundException((String) args[0]);
+                }
+                return null;
+              case "push":
+                pushed.add((String) args[0]);
+                return null;
+              default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+          }
+        });
+  }
+}
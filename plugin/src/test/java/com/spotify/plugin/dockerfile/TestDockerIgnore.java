@@ -0,0 +1,110 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.spotify.plugin.dockerfile.ContextIndex.DockerIgnore;
+import org.junit.Test;
+
+public class TestDockerIgnore {
+
+  @Test
+  public void testIgnoresDirectoriesAndTheirContents() {
+    final DockerIgnore ignore = DockerIgnore.parse(ImmutableList.of("# comment", "/target/"));
+
+    assertTrue(ignore.isIgnored("target"));
+    assertTrue(ignore.isIgnored("target/classes/Foo.class"));
+    assertFalse(ignore.isIgnored("src/main/target.txt"));
+  }
+
+  @Test
+  public void testGlobsAndExceptions() {
+    final DockerIgnore ignore =
+        DockerIgnore.parse(ImmutableList.of("**/*.log", "target", "!target/app.jar"));
+
+    assertTrue(ignore.isIgnored("logs/server.log"));
+    assertTrue(ignore.isIgnored("target/lib/dep.jar"));
+    assertFalse(ignore.isIgnored("target/app.jar"));
+    assertFalse(ignore.isIgnored("Dockerfile"));
+  }
+
+  @Test
+  public void testDoubleStarMatchesNoDirectories() {
+    final DockerIgnore ignore = DockerIgnore.parse(ImmutableList.of("**/*.log", "docs/**/*.md"));
+
+    assertTrue(ignore.isIgnored("a.log"));
+    assertTrue(ignore.isIgnored("a/b/c.log"));
+    assertTrue(ignore.isIgnored("docs/index.md"));
+    assertTrue(ignore.isIgnored("docs/api/index.md"));
+    assertFalse(ignore.isIgnored("index.md"));
+    assertFalse(ignore.isIgnored("a.log.txt"));
+  }
+
+  @Test
+  public void testTrailingDoubleStarMatchesEverythingBelow() {
+    final DockerIgnore ignore = DockerIgnore.parse(ImmutableList.of("build/**", "**"));
+
+    assertTrue(ignore.isIgnored("build/a/b"));
+    assertTrue(ignore.isIgnored("Dockerfile"));
+  }
+
+  @Test
+  public void testSingleStarAndQuestionMarkStayInOneDirectory() {
+    final DockerIgnore ignore = DockerIgnore.parse(ImmutableList.of("*.tmp", "src/?.txt"));
+
+    assertTrue(ignore.isIgnored("a.tmp"));
+    assertFalse(ignore.isIgnored("cache/a.tmp"));
+    assertTrue(ignore.isIgnored("src/a.txt"));
+    assertFalse(ignore.isIgnored("src/ab.txt"));
+    assertFalse(ignore.isIgnored("src/a/b.txt"));
+  }
+
+  @Test
+  public void testPatternsAreCleaned() {
+    final DockerIgnore ignore =
+        DockerIgnore.parse(ImmutableList.of("./target//classes/", "/docs/../tmp"));
+
+    assertTrue(ignore.isIgnored("target/classes/Foo.class"));
+    assertTrue(ignore.isIgnored("tmp/file"));
+    assertFalse(ignore.isIgnored("docs/file"));
+  }
+
+  @Test
+  public void testCharacterClassesAndEscapes() {
+    final DockerIgnore ignore =
+        DockerIgnore.parse(ImmutableList.of("file[0-9].txt", "weird\\*name", "a+b.txt"));
+
+    assertTrue(ignore.isIgnored("file1.txt"));
+    assertFalse(ignore.isIgnored("filex.txt"));
+    assertTrue(ignore.isIgnored("weird*name"));
+    assertFalse(ignore.isIgnored("weirdXname"));
+    assertTrue(ignore.isIgnored("a+b.txt"));
+    assertFalse(ignore.isIgnored("aab.txt"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIllegalPattern() {
+    DockerIgnore.parse(ImmutableList.of("file[0-9.txt"));
+  }
+}
@@ -0,0 +1,150 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.common.collect.ImmutableMap;
+import com.spotify.plugin.dockerfile.extension.BaseImages;
+import com.spotify.plugin.dockerfile.extension.DockerfileParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class TestDockerLock {
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    final Path file = Files.createTempFile("docker", ".lock");
+    try {
+      final Map<String, String> digests = new LinkedHashMap<>();
+      digests.put("ubuntu:18.04", "sha256:2222");
+      digests.put("localhost:5000/base:1", "sha256:1111");
+      DockerLock.write(file, digests);
+
+      assertEquals(Arrays.asList(
+          "# Base image digests, written by dockerfile:lock",
+          "localhost:5000/base:1=sha256:1111",
+          "ubuntu:18.04=sha256:2222"),
+          Files.readAllLines(file, StandardCharsets.UTF_8));
+      assertEquals(digests, DockerLock.read(file));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testMalformedLine() throws IOException {
+    final Path file = Files.createTempFile("docker", ".lock");
+    try {
+      Files.write(file, Arrays.asList("ubuntu:18.04"), StandardCharsets.UTF_8);
+      DockerLock.read(file);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testPinned() {
+    assertEquals("ubuntu@sha256:1", DockerLock.pinned("ubuntu:18.04", "sha256:1"));
+    assertEquals("ubuntu@sha256:1", DockerLock.pinned("ubuntu", "sha256:1"));
+    assertEquals("localhost:5000/base@sha256:1",
+        DockerLock.pinned("localhost:5000/base:1", "sha256:1"));
+    assertEquals("localhost:5000/base@sha256:1",
+        DockerLock.pinned("localhost:5000/base", "sha256:1"));
+  }
+
+  @Test
+  public void testRewriteNamesPinnedBaseImagesByDigest() {
+    final String dockerfile =
+        "ARG VERSION=8\n"
+        + "FROM --platform=linux/amd64 openjdk:${VERSION} AS build\n"
+        + "RUN true\n"
+        + "FROM \\\n"
+        + "    # a comment\n"
+        + "    ubuntu:18.04\n"
+        + "FROM alpine:3.9\n"
+        + "COPY --from=build /app.jar /\n";
+
+    assertEquals(
+        "ARG VERSION=8\n"
+        + "FROM --platform=linux/amd64 openjdk@sha256:1 AS build\n"
+        + "RUN true\n"
+        + "FROM ubuntu@sha256:2\n"
+        + "\n"
+        + "\n"
+        + "FROM alpine:3.9\n"
+        + "COPY --from=build /app.jar /\n",
+        rewrite(dockerfile, ImmutableMap.of(
+            "openjdk:8", "openjdk@sha256:1", "ubuntu:18.04", "ubuntu@sha256:2")));
+  }
+
+  @Test
+  public void testRewriteWithoutPinnedBaseImages() {
+    assertNull(rewrite("FROM alpine:3.9\n",
+        ImmutableMap.of("ubuntu:18.04", "ubuntu@sha256:2")));
+  }
+
+  @Test
+  public void testWriteIfChanged() throws IOException {
+    final Path directory = Files.createTempDirectory("context");
+    final Path file = DockerLock.lockedDockerfile(directory.resolve("Dockerfile"));
+    try {
+      assertEquals(".Dockerfile.locked", file.getFileName().toString());
+      DockerLock.writeIfChanged(file, "FROM ubuntu@sha256:2\n");
+      final long modified = Files.getLastModifiedTime(file).toMillis() - 10000;
+      Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+      DockerLock.writeIfChanged(file, "FROM ubuntu@sha256:2\n");
+
+      assertEquals(modified, Files.getLastModifiedTime(file).toMillis());
+      assertEquals(Arrays.asList(".Dockerfile.locked"), list(directory));
+    } finally {
+      Files.deleteIfExists(file);
+      Files.delete(directory);
+    }
+  }
+
+  private static String rewrite(String dockerfile, Map<String, String> pinned) {
+    final List<DockerfileParser.Instruction> instructions = DockerfileParser.parse(dockerfile);
+    return DockerLock.rewrite(dockerfile, BaseImages.resolve(instructions, null), pinned);
+  }
+
+  private static List<String> list(Path directory) throws IOException {
+    final List<String> names = new ArrayList<>();
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+      for (Path entry : entries) {
+        names.add(entry.getFileName().toString());
+      }
+    }
+    return names;
+  }
+}
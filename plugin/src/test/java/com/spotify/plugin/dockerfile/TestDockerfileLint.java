@@ -0,0 +1,85 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.spotify.plugin.dockerfile.extension.DockerfileParser;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class TestDockerfileLint {
+
+  @Test
+  public void testCopyWholeContextBeforeRun() {
+    final List<String> problems = lint(
+        "FROM maven:3\n"
+        + "COPY . /src\n"
+        + "RUN mvn package\n");
+
+    assertEquals(1, problems.size());
+    assertTrue(problems.get(0).startsWith("Dockerfile:2:"));
+  }
+
+  @Test
+  public void testCopyWholeContextLastIsFine() {
+    assertEquals(Collections.emptyList(), lint(
+        "FROM maven:3\n"
+        + "COPY pom.xml /src/\n"
+        + "RUN mvn dependency:go-offline\n"
+        + "COPY . /src\n"
+        + "FROM openjdk:8\n"
+        + "COPY --from=0 /src/target/app.jar /app.jar\n"
+        + "RUN true\n"));
+  }
+
+  @Test
+  public void testRemoteAdd() {
+    final List<String> problems = lint(
+        "FROM openjdk:8\n"
+        + "ADD https://example.com/agent.jar /agent.jar\n");
+
+    assertEquals(1, problems.size());
+    assertTrue(problems.get(0).contains("https://example.com/agent.jar"));
+  }
+
+  @Test
+  public void testVolatileBuildArg() {
+    final List<String> problems = DockerfileLinter.lint("Dockerfile", DockerfileParser.parse(
+        "FROM openjdk:8\n"
+        + "ARG BUILD_TIME=unknown\n"
+        + "RUN echo $BUILD_TIME > /build-time\n"),
+        ImmutableMap.of("BUILD_TIME", "2019-10-15T10:00:00Z"),
+        ImmutableList.of("2019-10-15T10:00:00Z"));
+
+    assertEquals(1, problems.size());
+    assertTrue(problems.get(0).contains("BUILD_TIME"));
+  }
+
+  private static List<String> lint(String dockerfile) {
+    return DockerfileLinter.lint("Dockerfile", DockerfileParser.parse(dockerfile),
+        null, Collections.<String>emptyList());
+  }
+}
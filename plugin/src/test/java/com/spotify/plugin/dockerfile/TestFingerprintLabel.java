@@ -0,0 +1,160 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.ObjectMapperProvider;
+import com.spotify.docker.client.ProgressHandler;
+import com.spotify.docker.client.messages.Image;
+import com.spotify.docker.client.messages.ProgressMessage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFingerprintLabel {
+
+  private static final String BUILT_ID = "0123456789ab";
+
+  private final AtomicInteger builds = new AtomicInteger();
+  private final Map<String, String> labeledImages = new HashMap<>();
+  private final List<String> tagged = new ArrayList<>();
+  private File basedir;
+  private BuildMojo mojo;
+
+  @Before
+  public void setUp() throws Exception {
+    basedir = Files.createTempDirectory("fingerprint-label").toFile();
+    write("Dockerfile", "FROM scratch\nCOPY src /src\n");
+    write("src/hello.txt", "hello");
+    write("target/app-1.0.jar", "jar");
+
+    mojo = new BuildMojo();
+    Mojos.setProjectDirectories(mojo, basedir);
+    Mojos.set(mojo, "repository", "example/app");
+    Mojos.set(mojo, "tag", "1.0");
+    Mojos.set(mojo, "lint", "off");
+    Mojos.set(mojo, "fingerprintLabel", true);
+    mojo.session = Sessions.newSession();
+  }
+
+  @After
+  public void tearDown() {
+    delete(basedir);
+  }
+
+  @Test
+  public void testImageWithSameFingerprintIsReused() throws Exception {
+    labeledImages.put(mojo.fingerprint(null), "sha256:labeled");
+
+    assertEquals("sha256:labeled", mojo.build(fakeDaemon(), new SystemStreamLog()));
+
+    assertEquals(0, builds.get());
+    assertEquals(Collections.singletonList("sha256:labeled example/app:1.0"), tagged);
+  }
+
+  @Test
+  public void testImageWithOtherFingerprintIsNotReused() throws Exception {
+    labeledImages.put(mojo.fingerprint(null), "sha256:labeled");
+    write("src/hello.txt", "hello again");
+
+    assertEquals(BUILT_ID, mojo.build(fakeDaemon(), new SystemStreamLog()));
+
+    assertEquals(1, builds.get());
+    assertEquals(Collections.<String>emptyList(), tagged);
+  }
+
+  /**
+   * Returns a daemon that lists the images in {@link #labeledImages} by their fingerprint label,
+   * and builds an image with ID {@link #BUILT_ID}.
+   */
+  private DockerClient fakeDaemon() {
+    return (DockerClient) Proxy.newProxyInstance(DockerClient.class.getClassLoader(),
+        new Class<?>[] {DockerClient.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+              case "listImages":
+                return listImages((DockerClient.ListImagesParam[]) args[0]);
+              case "build":
+                builds.incrementAndGet();
+                ((ProgressHandler) args[2]).progress(ProgressMessage.builder()
+                    .stream("Successfully built " + BUILT_ID + "\n").build());
+                return BUILT_ID;
+              case "tag":
+                tagged.add(args[0] + " " + args[1]);
+                return null;
+              default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+          }
+        });
+  }
+
+  private List<Image> listImages(DockerClient.ListImagesParam[] params) throws IOException {
+    final List<Image> images = new ArrayList<>();
+    for (DockerClient.ListImagesParam param : params) {
+      final String prefix = BuildMojo.FINGERPRINT_LABEL + "=";
+      if (!"label".equals(param.name()) || !param.value().startsWith(prefix)) {
+        continue;
+      }
+      final String imageId = labeledImages.get(param.value().substring(prefix.length()));
+      if (imageId != null) {
+        images.add(new ObjectMapperProvider().getContext(Image.class).readValue(
+            "{\"Id\": \"" + imageId + "\", \"Created\": \"1500000000\", \"ParentId\": \"\","
+            + " \"Size\": 1, \"VirtualSize\": 1}", Image.class));
+      }
+    }
+    return images;
+  }
+
+  private void write(String path, String content) throws IOException {
+    final Path file = basedir.toPath().resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void delete(File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
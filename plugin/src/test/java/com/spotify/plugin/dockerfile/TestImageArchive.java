@@ -0,0 +1,61 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Test;
+
+public class TestImageArchive {
+
+  @Test
+  public void testReadsImageIdFromHeader() throws IOException {
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (OutputStream out = new ParallelGzipOutputStream(compressed, 2, 6, "sha256:1234")) {
+      out.write("tar contents".getBytes(StandardCharsets.UTF_8));
+    }
+
+    assertEquals("sha256:1234",
+        ImageArchive.readImageId(new ByteArrayInputStream(compressed.toByteArray())));
+  }
+
+  @Test
+  public void testPlainGzipHasNoImageId() throws IOException {
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(compressed)) {
+      out.write("tar contents".getBytes(StandardCharsets.UTF_8));
+    }
+
+    assertNull(ImageArchive.readImageId(new ByteArrayInputStream(compressed.toByteArray())));
+  }
+
+  @Test(expected = IOException.class)
+  public void testRejectsNonGzip() throws IOException {
+    ImageArchive.readImageId(new ByteArrayInputStream(new byte[] {'t', 'a', 'r', 0, 0, 0}));
+  }
+}
@@ -0,0 +1,166 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.ByteStreams;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestImageCache {
+
+  private Path directory;
+
+  @Before
+  public void createDirectory() throws IOException {
+    directory = Files.createTempDirectory("image-cache");
+  }
+
+  @After
+  public void deleteDirectory() {
+    delete(directory.toFile());
+  }
+
+  @Test
+  public void testStoreThenRestoreIntoEmptyDaemon() throws Exception {
+    final ImageCache cache = new ImageCache(directory, 1024, new SystemStreamLog());
+    cache.store(daemon(new HashSet<>(Collections.singleton("sha256:aaaa"))), "fp1", "sha256:aaaa");
+
+    assertTrue(Files.isRegularFile(directory.resolve("fp1.tar")));
+    assertEquals("sha256:aaaa\n", read(directory.resolve("fp1.image-id")));
+
+    final Set<String> empty = new HashSet<>();
+    assertEquals("sha256:aaaa", cache.restore(daemon(empty), "fp1"));
+    assertTrue(empty.contains("sha256:aaaa"));
+  }
+
+  @Test
+  public void testRestoreOfPresentImageDoesNotLoad() throws Exception {
+    final ImageCache cache = new ImageCache(directory, 1024, new SystemStreamLog());
+    write(directory.resolve("fp1.image-id"), "sha256:aaaa\n");
+
+    // The archive is missing, so a load would fail
+    assertEquals("sha256:aaaa",
+        cache.restore(daemon(new HashSet<>(Collections.singleton("sha256:aaaa"))), "fp1"));
+  }
+
+  @Test
+  public void testRestoreMisses() throws Exception {
+    final ImageCache cache = new ImageCache(directory, 1024, new SystemStreamLog());
+
+    assertNull(cache.restore(daemon(new HashSet<String>()), "unknown"));
+
+    // An archive that does not contain the recorded image is ignored
+    write(directory.resolve("fp1.image-id"), "sha256:aaaa\n");
+    write(directory.resolve("fp1.tar"), "sha256:bbbb");
+    assertNull(cache.restore(daemon(new HashSet<String>()), "fp1"));
+  }
+
+  @Test
+  public void testStoreEvictsLeastRecentlyUsed() throws Exception {
+    // Each archive of the fake daemon is 11 bytes, so two fit
+    final ImageCache cache = new ImageCache(directory, 25, new SystemStreamLog());
+    final Set<String> images = new HashSet<>();
+    images.add("sha256:aaaa");
+    images.add("sha256:bbbb");
+    images.add("sha256:cccc");
+    final DockerClient daemon = daemon(images);
+
+    cache.store(daemon, "fp1", "sha256:aaaa");
+    cache.store(daemon, "fp2", "sha256:bbbb");
+    Files.setLastModifiedTime(directory.resolve("fp1.tar"), FileTime.fromMillis(2000000000L));
+    Files.setLastModifiedTime(directory.resolve("fp2.tar"), FileTime.fromMillis(1000000000L));
+    cache.store(daemon, "fp3", "sha256:cccc");
+
+    assertTrue(Files.exists(directory.resolve("fp1.tar")));
+    assertFalse(Files.exists(directory.resolve("fp2.tar")));
+    assertFalse(Files.exists(directory.resolve("fp2.image-id")));
+    assertTrue(Files.exists(directory.resolve("fp3.tar")));
+  }
+
+  /**
+   * Returns a daemon holding the given images, whose archives contain just the image ID.
+   */
+  private static DockerClient daemon(final Set<String> images) {
+    return (DockerClient) Proxy.newProxyInstance(DockerClient.class.getClassLoader(),
+        new Class<?>[] {DockerClient.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+            switch (method.getName()) {
+              case "inspectImage":
+                if (!images.contains((String) args[0])) {
+                  throw new ImageNotFoundException((String) args[0]);
+                }
+                return null;
+              case "save":
+                final String image = ((String[]) args[0])[0];
+                return new ByteArrayInputStream(image.getBytes(StandardCharsets.UTF_8));
+              case "load":
+                final String loaded = new String(
+                    ByteStreams.toByteArray((InputStream) args[0]), StandardCharsets.UTF_8);
+                images.add(loaded);
+                return Collections.singleton(loaded);
+              default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+          }
+        });
+  }
+
+  private static String read(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void delete(File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
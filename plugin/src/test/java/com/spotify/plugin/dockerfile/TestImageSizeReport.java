@@ -0,0 +1,89 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class TestImageSizeReport {
+
+  private static final long MB = 1024 * 1024;
+
+  @Test
+  public void testGrowthWithinBudget() {
+    final ImageSizeReport baseline = report(100 * MB, 80 * MB, 20 * MB);
+    final ImageSizeReport current = report(150 * MB, 80 * MB, 70 * MB);
+
+    assertTrue(current.regressions(baseline, 100 * MB, 100 * MB).isEmpty());
+  }
+
+  @Test
+  public void testReportsImageAndLayerGrowth() {
+    final ImageSizeReport baseline = report(100 * MB, 80 * MB, 20 * MB);
+    final ImageSizeReport current = report(300 * MB, 80 * MB, 220 * MB);
+
+    final List<String> regressions = current.regressions(baseline, 100 * MB, 100 * MB);
+    assertEquals(2, regressions.size());
+    assertEquals("Image grew by 200.0 MB, from 100.0 MB to 300.0 MB", regressions.get(0));
+    assertTrue(regressions.get(1), regressions.get(1).startsWith("Layer 2 grew by 200.0 MB"));
+  }
+
+  @Test
+  public void testNewLayerCountsAsGrowth() {
+    final ImageSizeReport baseline = report(80 * MB, 80 * MB);
+    final ImageSizeReport current = report(200 * MB, 80 * MB, 120 * MB);
+
+    assertEquals(2, current.regressions(baseline, 100 * MB, 100 * MB).size());
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    final Path file = Files.createTempFile("image-size", ".json");
+    try {
+      report(100 * MB, 80 * MB, 20 * MB).write(file);
+      final ImageSizeReport read = ImageSizeReport.read(file);
+
+      assertEquals("sha256:1234", read.imageId);
+      assertEquals(100 * MB, read.size);
+      assertEquals(2, read.layers.size());
+      assertEquals(20 * MB, read.layers.get(1).size);
+    } finally {
+      Files.delete(file);
+    }
+    assertNull(ImageSizeReport.read(file));
+  }
+
+  private static ImageSizeReport report(long size, long... layerSizes) {
+    final ImageSizeReport.Layer[] layers = new ImageSizeReport.Layer[layerSizes.length];
+    for (int i = 0; i < layerSizes.length; i++) {
+      layers[i] = new ImageSizeReport.Layer("RUN step " + i, layerSizes[i]);
+    }
+    return new ImageSizeReport("sha256:1234", size, Arrays.asList(layers));
+  }
+}
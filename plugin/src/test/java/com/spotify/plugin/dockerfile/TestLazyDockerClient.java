@@ -0,0 +1,129 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.junit.Test;
+
+public class TestLazyDockerClient {
+
+  @Test
+  public void testSkippedGoalNeverOpensClient() throws Exception {
+    final AtomicInteger opened = new AtomicInteger();
+    final TagMojo mojo = new TagMojo() {
+      @Override
+      protected DockerClient openDockerClient() {
+        opened.incrementAndGet();
+        return Sessions.closeCountingClient(new AtomicInteger());
+      }
+    };
+    mojo.session = Sessions.newSession();
+    final Field skipTag = TagMojo.class.getDeclaredField("skipTag");
+    skipTag.setAccessible(true);
+    skipTag.setBoolean(mojo, true);
+
+    mojo.tryExecute(1);
+
+    assertEquals(0, opened.get());
+  }
+
+  @Test
+  public void testGoalOpensClientOnFirstUse() throws Exception {
+    final AtomicInteger opened = new AtomicInteger();
+    final AtomicInteger closed = new AtomicInteger();
+    final AbstractDockerMojo mojo = new AbstractDockerMojo() {
+      @Override
+      protected void execute(DockerClient dockerClient) throws MojoExecutionException {
+        assertEquals(0, opened.get());
+        try {
+          dockerClient.close();
+          assertEquals(0, closed.get());
+          dockerClient.ping();
+          dockerClient.ping();
+          dockerClient.close();
+        } catch (DockerException | InterruptedException e) {
+          throw new MojoExecutionException(e.getMessage(), e);
+        }
+      }
+
+      @Override
+      protected DockerClient openDockerClient() {
+        opened.incrementAndGet();
+        return pingingClient(closed);
+      }
+    };
+    mojo.session = Sessions.newSession();
+
+    mojo.tryExecute(1);
+
+    assertEquals(1, opened.get());
+    assertEquals(1, closed.get());
+  }
+
+  @Test(expected = MojoFailureException.class)
+  public void testFailureOpeningClientSurfaces() throws Exception {
+    final AbstractDockerMojo mojo = new AbstractDockerMojo() {
+      @Override
+      protected void execute(DockerClient dockerClient) throws MojoFailureException {
+        try {
+          dockerClient.ping();
+        } catch (DockerException | InterruptedException e) {
+          throw new MojoFailureException(e.getMessage(), e);
+        }
+      }
+
+      @Override
+      protected DockerClient openDockerClient() throws MojoExecutionException {
+        throw new MojoExecutionException("Could not load Docker certificates");
+      }
+    };
+    mojo.session = Sessions.newSession();
+
+    mojo.tryExecute(1);
+  }
+
+  /**
+   * Returns a client that answers pings and counts how often it was closed.
+   */
+  private static DockerClient pingingClient(final AtomicInteger closed) {
+    final DockerClient closeCounting = Sessions.closeCountingClient(closed);
+    return (DockerClient) Proxy.newProxyInstance(DockerClient.class.getClassLoader(),
+        new Class<?>[] {DockerClient.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args)
+              throws Throwable {
+            if ("ping".equals(method.getName())) {
+              return "OK";
+            }
+            return method.invoke(closeCounting, args);
+          }
+        });
+  }
+}
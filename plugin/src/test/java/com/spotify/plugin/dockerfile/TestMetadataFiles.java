@@ -0,0 +1,102 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class TestMetadataFiles {
+
+  @Test
+  public void testWriteReadAndDelete() throws IOException {
+    final Path directory = Files.createTempDirectory("metadata");
+    final Path file = directory.resolve("image-id");
+    try {
+      assertNull(MetadataFiles.read(file));
+      assertTrue(MetadataFiles.write(file, "sha256:1234"));
+      assertFalse(MetadataFiles.write(file, "sha256:1234"));
+      assertEquals("sha256:1234", MetadataFiles.read(file));
+      assertTrue(MetadataFiles.write(file, null));
+      assertNull(MetadataFiles.read(file));
+    } finally {
+      delete(directory.toFile());
+    }
+  }
+
+  @Test
+  public void testConcurrentWritersNeverExposePartialFiles() throws Exception {
+    final Path directory = Files.createTempDirectory("metadata");
+    final Path file = directory.resolve("image-id");
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      final List<Future<Void>> writers = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        final String value = "sha256:" + i + "-" + new String(new char[1000]).replace('\0', 'x');
+        writers.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = 0; j < 50; j++) {
+              MetadataFiles.write(file, value);
+              final String read = MetadataFiles.read(file);
+              assertEquals(1009, read.length());
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> writer : writers) {
+        writer.get();
+      }
+
+      for (String name : directory.toFile().list()) {
+        assertTrue(name, name.equals("image-id") || !MetadataFiles.isMetadata(name));
+      }
+      assertFalse(MetadataFiles.isMetadata(".image-id.lock"));
+    } finally {
+      executor.shutdownNow();
+      delete(directory.toFile());
+    }
+  }
+
+  private static void delete(File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,90 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import org.junit.Test;
+
+public class TestParallelGzipOutputStream {
+
+  @Test
+  public void testRoundTripAcrossManyBlocks() throws IOException {
+    final byte[] data = testData(1024 * 1024 + 17);
+
+    final byte[] compressed = compress(data, 4, 16 * 1024);
+
+    assertArrayEquals(data, decompress(compressed));
+    assertTrue("Compressible data should shrink", compressed.length < data.length / 2);
+  }
+
+  @Test
+  public void testRoundTripEmpty() throws IOException {
+    assertArrayEquals(new byte[0], decompress(compress(new byte[0], 2, 1024)));
+  }
+
+  @Test
+  public void testRoundTripSingleThreadSingleByteWrites() throws IOException {
+    final byte[] data = testData(10000);
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (OutputStream out =
+             new ParallelGzipOutputStream(compressed, 1, 6, "sha256:abc", 1000)) {
+      for (byte b : data) {
+        out.write(b);
+      }
+    }
+
+    assertArrayEquals(data, decompress(compressed.toByteArray()));
+  }
+
+  private static byte[] compress(byte[] data, int threads, int blockSize) throws IOException {
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (OutputStream out =
+             new ParallelGzipOutputStream(compressed, threads, 6, "sha256:abc", blockSize)) {
+      out.write(data);
+    }
+    return compressed.toByteArray();
+  }
+
+  private static byte[] decompress(byte[] compressed) throws IOException {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+
+  private static byte[] testData(int length) {
+    // Half random, half repetitive, like a tar of jars and text files
+    final Random random = new Random(42);
+    final byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (i / 4096) % 2 == 0 ? (byte) random.nextInt(4) : (byte) ('a' + i % 7);
+    }
+    return data;
+  }
+}
@@ -0,0 +1,222 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ProgressDetail;
+import com.spotify.docker.client.messages.ProgressMessage;
+import com.spotify.plugin.dockerfile.progress.ProgressEvent;
+import com.spotify.plugin.dockerfile.progress.ProgressEvent.Operation;
+import com.spotify.plugin.dockerfile.progress.ProgressListener;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+public class TestProgressEvents {
+
+  @Test
+  public void testBuildSteps() throws Exception {
+    final List<String> events = new ArrayList<>();
+    final ProgressEvents progress = build(events);
+
+    feed(progress,
+        stream("Step 1/3 : FROM busybox\n"),
+        stream(" ---> 8c811b4aec35\n"),
+        stream("Step 2/3 : RUN echo hi\n"),
+        stream(" ---> Running in 1a2b3c4d5e6f\n"),
+        stream("hi\n"),
+        stream(" ---> 0d2c7a9b3e41\n"),
+        stream("Removing intermediate container 1a2b3c4d5e6f\n"),
+        stream("Step 3/3 : CMD [\"sh\"]\n"),
+        stream(" ---> Running in 6f5e4d3c2b1a\n"),
+        stream(" ---> 5f0e6a4b2c19\n"),
+        stream("Successfully built 5f0e6a4b2c19\n"));
+
+    assertEquals(ImmutableList.of(
+        "started 1/3 FROM busybox",
+        "finished 1 8c811b4aec35",
+        "started 2/3 RUN echo hi",
+        "finished 2 0d2c7a9b3e41",
+        "started 3/3 CMD [\"sh\"]",
+        "finished 3 5f0e6a4b2c19",
+        "built 5f0e6a4b2c19"), steps(events));
+    assertEquals("5f0e6a4b2c19", progress.builtImageId());
+  }
+
+  @Test
+  public void testStepsWithoutTotalAndCachedLayers() throws Exception {
+    final List<String> events = new ArrayList<>();
+    final ProgressEvents progress = build(events);
+
+    feed(progress,
+        stream("Step 1 : FROM busybox\n ---> 8c811b4aec35\n"),
+        stream("Step 2 : ENV A=1\n ---> Using cache\n ---> 3e41a9b0d2c7\n"),
+        stream("Successfully built 3e41a9b0d2c7\n"));
+
+    assertEquals(ImmutableList.of(
+        "started 1/0 FROM busybox",
+        "finished 1 8c811b4aec35",
+        "started 2/0 ENV A=1",
+        "finished 2 3e41a9b0d2c7",
+        "built 3e41a9b0d2c7"), steps(events));
+  }
+
+  @Test
+  public void testLastStepFinishesWhenImageIsBuilt() throws Exception {
+    final List<String> events = new ArrayList<>();
+    final ProgressEvents progress = build(events);
+
+    // The image ID is announced before the result of the step is printed
+    feed(progress,
+        stream("Step 1/1 : FROM busybox\n"),
+        stream("Successfully built 8c811b4aec35\n"));
+
+    assertEquals(ImmutableList.of(
+        "started 1/1 FROM busybox",
+        "finished 1 null",
+        "built 8c811b4aec35"), steps(events));
+  }
+
+  @Test
+  public void testOutputAndLayerProgress() throws Exception {
+    final List<String> events = new ArrayList<>();
+    final ProgressEvents progress =
+        new ProgressEvents(new SystemStreamLog(), Operation.PULL, "busybox", recorder(events));
+
+    feed(progress,
+        ProgressMessage.builder().status("Pulling from library/busybox").id("latest").build(),
+        ProgressMessage.builder().status("Downloading").id("57c14dd66db0")
+            .progressDetail(ProgressDetail.create(512L, null, 1024L)).progress("[=====>  ]")
+            .build());
+
+    assertEquals(ImmutableList.of(
+        "output Pulling from library/busybox",
+        "layer 57c14dd66db0 Downloading 512/1024"), events);
+  }
+
+  @Test
+  public void testFailureIsDispatchedThenThrown() throws Exception {
+    final List<String> events = new ArrayList<>();
+    final ProgressEvents progress = build(events);
+
+    feed(progress, stream("Step 1/2 : FROM busybox\n"), stream(" ---> 8c811b4aec35\n"));
+    try {
+      progress.progress(ProgressMessage.builder()
+          .error("The command '/bin/sh -c false' returned a non-zero code: 1").build());
+      fail("Expected the failure to be thrown");
+    } catch (DockerException e) {
+      assertEquals("The command '/bin/sh -c false' returned a non-zero code: 1", e.getMessage());
+    }
+
+    assertEquals(
+        "failure The command '/bin/sh -c false' returned a non-zero code: 1",
+        events.get(events.size() - 1));
+  }
+
+  @Test
+  public void testThrowingListenerDoesNotFailTheBuild() throws Exception {
+    final List<String> events = new ArrayList<>();
+    final ProgressListener recorder = recorder(events);
+    final ProgressEvents progress = new ProgressEvents(
+        new SystemStreamLog(), Operation.BUILD, "app", new ProgressListener() {
+          @Override
+          public void onEvent(ProgressEvent event) {
+            recorder.onEvent(event);
+            throw new IllegalStateException("broken listener");
+          }
+        });
+
+    feed(progress,
+        stream("Step 1/1 : FROM busybox\n"),
+        stream(" ---> 8c811b4aec35\n"),
+        stream("Successfully built 8c811b4aec35\n"));
+
+    // Every event still reached the listener, and the build got its image ID
+    assertEquals(ImmutableList.of(
+        "started 1/1 FROM busybox",
+        "finished 1 8c811b4aec35",
+        "built 8c811b4aec35"), steps(events));
+    assertEquals("8c811b4aec35", progress.builtImageId());
+  }
+
+  private static ProgressEvents build(List<String> events) {
+    return new ProgressEvents(new SystemStreamLog(), Operation.BUILD, "app", recorder(events));
+  }
+
+  private static ProgressMessage stream(String stream) {
+    return ProgressMessage.builder().stream(stream).build();
+  }
+
+  private static void feed(ProgressEvents progress, ProgressMessage... messages)
+      throws DockerException {
+    for (ProgressMessage message : messages) {
+      progress.progress(message);
+    }
+  }
+
+  /**
+   * Returns the events about build steps and built images, leaving out plain output.
+   */
+  private static List<String> steps(List<String> events) {
+    final List<String> steps = new ArrayList<>();
+    for (String event : events) {
+      if (!event.startsWith("output ")) {
+        steps.add(event);
+      }
+    }
+    return steps;
+  }
+
+  private static ProgressListener recorder(final List<String> events) {
+    return new ProgressListener() {
+      @Override
+      public void onEvent(ProgressEvent event) {
+        events.add(describe(event));
+      }
+    };
+  }
+
+  private static String describe(ProgressEvent event) {
+    if (event instanceof ProgressEvent.Output) {
+      return "output " + ((ProgressEvent.Output) event).getLine();
+    } else if (event instanceof ProgressEvent.BuildStepStarted) {
+      final ProgressEvent.BuildStepStarted started = (ProgressEvent.BuildStepStarted) event;
+      return "started " + started.getStep() + "/" + started.getTotalSteps() + " "
+             + started.getInstruction();
+    } else if (event instanceof ProgressEvent.BuildStepFinished) {
+      final ProgressEvent.BuildStepFinished finished = (ProgressEvent.BuildStepFinished) event;
+      return "finished " + finished.getStep() + " " + finished.getLayerId();
+    } else if (event instanceof ProgressEvent.LayerProgress) {
+      final ProgressEvent.LayerProgress layer = (ProgressEvent.LayerProgress) event;
+      return "layer " + layer.getLayerId() + " " + layer.getStatus() + " " + layer.getCurrent()
+             + "/" + layer.getTotal();
+    } else if (event instanceof ProgressEvent.ImageBuilt) {
+      return "built " + ((ProgressEvent.ImageBuilt) event).getImageId();
+    } else if (event instanceof ProgressEvent.Failure) {
+      return "failure " + ((ProgressEvent.Failure) event).getMessage();
+    }
+    return event.getClass().getSimpleName();
+  }
+}
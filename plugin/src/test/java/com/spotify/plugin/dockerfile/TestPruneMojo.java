@@ -0,0 +1,96 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+
+import com.spotify.plugin.dockerfile.PruneMojo.Candidate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+public class TestPruneMojo {
+
+  private static final Candidate OLDEST = image("sha256:1", 100);
+  private static final Candidate OLD = image("sha256:2", 200);
+  private static final Candidate NEW = image("sha256:3", 300);
+  private static final Candidate NEWEST = image("sha256:4", 400);
+
+  @Test
+  public void testKeepsTheMostRecentImages() {
+    assertEquals(Arrays.asList("sha256:2", "sha256:1"), ids(PruneMojo.candidates(
+        Arrays.asList(OLD, NEWEST, OLDEST, NEW), Collections.<String>emptySet(), 2)));
+  }
+
+  @Test
+  public void testKeepZeroRemovesEverythingNewestFirst() {
+    assertEquals(Arrays.asList("sha256:4", "sha256:3", "sha256:2", "sha256:1"),
+        ids(PruneMojo.candidates(Arrays.asList(OLDEST, OLD, NEW, NEWEST),
+            Collections.<String>emptySet(), 0)));
+  }
+
+  @Test
+  public void testProtectedImagesDoNotCountTowardsKeep() {
+    final Set<String> protectedIds = Collections.singleton("sha256:4");
+    assertEquals(Arrays.asList("sha256:1"), ids(PruneMojo.candidates(
+        Arrays.asList(OLDEST, OLD, NEW, NEWEST), protectedIds, 2)));
+    assertEquals(Collections.emptyList(), ids(PruneMojo.candidates(
+        Arrays.asList(OLDEST, NEWEST), protectedIds, 1)));
+  }
+
+  @Test
+  public void testNamesToRemove() {
+    final Candidate own = new Candidate("sha256:1", 100,
+        Arrays.asList("spotify/foo:1", "spotify/foo:fingerprint-abc"));
+    assertEquals(Arrays.asList("spotify/foo:1", "spotify/foo:fingerprint-abc"),
+        PruneMojo.namesToRemove(own, "spotify/foo"));
+
+    // Reused by another module through deduplication or fingerprint labels
+    final Candidate shared = new Candidate("sha256:2", 100,
+        Arrays.asList("spotify/foo:1", "spotify/foobar:latest", "spotify/bar:latest"));
+    assertEquals(Arrays.asList("spotify/foo:1"), PruneMojo.namesToRemove(shared, "spotify/foo"));
+
+    final Candidate others = new Candidate("sha256:3", 100, Arrays.asList("spotify/bar:1"));
+    assertEquals(Collections.emptyList(), PruneMojo.namesToRemove(others, "spotify/foo"));
+    assertEquals(Collections.emptyList(), PruneMojo.namesToRemove(others, null));
+
+    final Candidate untagged =
+        new Candidate("sha256:4", 100, Arrays.asList("<none>:<none>"));
+    assertEquals(Arrays.asList("sha256:4"), PruneMojo.namesToRemove(untagged, "spotify/foo"));
+    assertEquals(Arrays.asList("sha256:4"),
+        PruneMojo.namesToRemove(new Candidate("sha256:4", 100, null), null));
+  }
+
+  private static Candidate image(String id, long created) {
+    return new Candidate(id, created, null);
+  }
+
+  private static List<String> ids(List<Candidate> images) {
+    final List<String> ids = new ArrayList<>();
+    for (Candidate image : images) {
+      ids.add(image.id);
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,53 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerRequestException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import java.net.URI;
+import org.junit.Test;
+
+public class TestRegistryCache {
+
+  private static final URI DISTRIBUTION_URI =
+      URI.create("unix://localhost:80/distribution/repo:fingerprint-1234/json");
+
+  @Test
+  public void testMissingImagesAreNotInRegistry() {
+    assertTrue(BuildMojo.isNotInRegistry(new ImageNotFoundException("repo:fingerprint-1234")));
+    assertTrue(BuildMojo.isNotInRegistry(
+        new DockerRequestException("GET", DISTRIBUTION_URI, 404, "not found", null)));
+    assertTrue(BuildMojo.isNotInRegistry(new DockerRequestException("GET", DISTRIBUTION_URI, 500,
+        "{\"message\":\"manifest unknown: manifest unknown\"}", null)));
+  }
+
+  @Test
+  public void testOtherFailuresAreNotMistakenForMissingImages() {
+    assertFalse(BuildMojo.isNotInRegistry(new DockerRequestException("GET", DISTRIBUTION_URI, 401,
+        "{\"message\":\"unauthorized: authentication required\"}", null)));
+    assertFalse(BuildMojo.isNotInRegistry(new DockerRequestException("GET", DISTRIBUTION_URI, 500,
+        "{\"message\":\"Get https://registry/v2/: net/http: TLS handshake timeout\"}", null)));
+    assertFalse(BuildMojo.isNotInRegistry(new DockerException("java.net.ConnectException")));
+  }
+}
@@ -0,0 +1,205 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSessionBuilds {
+
+  private static final String KEY = "/context|fingerprint|false|false|";
+
+  private ExecutorService executor;
+  private SessionBuilds builds;
+  private CountDownLatch waiting;
+  private SystemStreamLog log;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newCachedThreadPool();
+    builds = new SessionBuilds(new ConcurrentHashMap<String, CompletableFuture<String>>());
+    waiting = new CountDownLatch(2);
+    log = new SystemStreamLog() {
+      @Override
+      public void info(CharSequence content) {
+        if (content.toString().startsWith("An identical image is being built")) {
+          waiting.countDown();
+        }
+      }
+    };
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testWaitersReuseTheImage() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final FakeBuild first = new FakeBuild(release, "sha256:1234");
+    final Future<String> building = submit(first);
+    final FakeBuild second = new FakeBuild(null, "sha256:5678");
+    final FakeBuild third = new FakeBuild(null, "sha256:5678");
+    final List<Future<String>> waiters = submitAfterFirstStarted(first, second, third);
+
+    assertTrue(waiting.await(10, TimeUnit.SECONDS));
+    release.countDown();
+
+    assertEquals("sha256:1234", building.get());
+    for (Future<String> waiter : waiters) {
+      assertEquals("sha256:1234", waiter.get());
+    }
+    assertEquals(1, first.builds.get());
+    assertEquals(0, second.builds.get() + third.builds.get());
+    assertEquals(Collections.singletonList("sha256:1234"), second.reused);
+    assertEquals(Collections.singletonList("sha256:1234"), third.reused);
+
+    // Later modules reuse the image right away
+    final FakeBuild later = new FakeBuild(null, "sha256:5678");
+    assertEquals("sha256:1234", builds.reuseOrBuild(KEY, later, log));
+    assertEquals(0, later.builds.get());
+  }
+
+  @Test
+  public void testOneWaiterRetriesAfterFailure() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final FakeBuild first = new FakeBuild(release, null);
+    final Future<String> building = submit(first);
+    final FakeBuild second = new FakeBuild(null, "sha256:5678");
+    final FakeBuild third = new FakeBuild(null, "sha256:5678");
+    final List<Future<String>> waiters = submitAfterFirstStarted(first, second, third);
+
+    assertTrue(waiting.await(10, TimeUnit.SECONDS));
+    first.failure = new MojoExecutionException("Could not build image");
+    release.countDown();
+
+    try {
+      building.get();
+      fail("Expected the first build to fail");
+    } catch (ExecutionException e) {
+      assertSame(first.failure, e.getCause());
+    }
+    for (Future<String> waiter : waiters) {
+      assertEquals("sha256:5678", waiter.get());
+    }
+    // One of the waiters built the image, the other one reused it
+    assertEquals(1, second.builds.get() + third.builds.get());
+    assertEquals(1, second.reused.size() + third.reused.size());
+  }
+
+  @Test
+  public void testWaitersBuildThemselvesWithoutImageId() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final FakeBuild first = new FakeBuild(release, null);
+    final Future<String> building = submit(first);
+    final FakeBuild second = new FakeBuild(null, "sha256:5678");
+    final FakeBuild third = new FakeBuild(null, "sha256:9abc");
+    final List<Future<String>> waiters = submitAfterFirstStarted(first, second, third);
+
+    assertTrue(waiting.await(10, TimeUnit.SECONDS));
+    release.countDown();
+
+    assertNull(building.get());
+    assertEquals("sha256:5678", waiters.get(0).get());
+    assertEquals("sha256:9abc", waiters.get(1).get());
+    assertEquals(1, second.builds.get());
+    assertEquals(1, third.builds.get());
+    assertTrue(second.reused.isEmpty() && third.reused.isEmpty());
+  }
+
+  private Future<String> submit(final FakeBuild build) {
+    return executor.submit(new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        return builds.reuseOrBuild(KEY, build, log);
+      }
+    });
+  }
+
+  private List<Future<String>> submitAfterFirstStarted(FakeBuild first, FakeBuild... others)
+      throws InterruptedException {
+    assertTrue(first.started.await(10, TimeUnit.SECONDS));
+    final List<Future<String>> futures = new ArrayList<>();
+    for (FakeBuild other : others) {
+      futures.add(submit(other));
+    }
+    return futures;
+  }
+
+  private static final class FakeBuild implements SessionBuilds.Build {
+
+    private final CountDownLatch release;
+    private final String imageId;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final AtomicInteger builds = new AtomicInteger();
+    private final List<String> reused = Collections.synchronizedList(new ArrayList<String>());
+    private volatile MojoExecutionException failure;
+
+    FakeBuild(CountDownLatch release, String imageId) {
+      this.release = release;
+      this.imageId = imageId;
+    }
+
+    @Override
+    public String build() throws MojoExecutionException {
+      builds.incrementAndGet();
+      started.countDown();
+      if (release != null) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new MojoExecutionException("Interrupted", e);
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      return imageId;
+    }
+
+    @Override
+    public void reuse(String imageId) {
+      reused.add(imageId);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.plugin.dockerfile.extension.SessionResources;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Test;
+
+public class TestSharedDockerClients {
+
+  @Test
+  public void testClientsAreSharedPerConfigurationAndClosedWhenSessionEnds()
+      throws MojoExecutionException, IOException {
+    final MavenSession session = Sessions.newSession();
+    // As published by the extension
+    final Queue<Closeable> closeAtEnd = new ConcurrentLinkedQueue<>();
+    session.getRepositorySession().getData()
+        .set(SessionResources.CLOSE_AT_SESSION_END_KEY, closeAtEnd);
+    final AtomicInteger closed = new AtomicInteger();
+    final SharedDockerClients.Factory factory = new SharedDockerClients.Factory() {
+      @Override
+      public DockerClient create() {
+        return Sessions.closeCountingClient(closed);
+      }
+    };
+
+    final DockerClient alice = SharedDockerClients.forSession(session).get("alice", factory);
+    assertSame(alice, SharedDockerClients.forSession(session).get("alice", factory));
+    assertNotSame(alice, SharedDockerClients.forSession(session).get("bob", factory));
+    assertEquals(0, closed.get());
+
+    assertEquals(1, closeAtEnd.size());
+    closeAtEnd.remove().close();
+    assertEquals(2, closed.get());
+  }
+}
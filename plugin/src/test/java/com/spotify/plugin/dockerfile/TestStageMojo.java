@@ -0,0 +1,144 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.spotify.plugin.dockerfile.StageMojo.Layer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeSet;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStageMojo {
+
+  private File basedir;
+  private File classesDirectory;
+
+  @Before
+  public void setUp() throws Exception {
+    basedir = Files.createTempDirectory("stage").toFile();
+    classesDirectory = new File(basedir, "classes");
+  }
+
+  @After
+  public void tearDown() {
+    delete(basedir);
+  }
+
+  @Test
+  public void testFilesAreAssignedToLayers() throws Exception {
+    write(classesDirectory.toPath().resolve("com/example/Main.class"), "class");
+    write(classesDirectory.toPath().resolve("application.properties"), "resource");
+    final Artifact unpackaged = artifact("com.example", "sibling", "1.0", "jar", true);
+    unpackaged.setFile(new File(basedir, "sibling/target/classes"));
+    unpackaged.getFile().mkdirs();
+
+    final Map<Layer, Map<String, Path>> layers = StageMojo.assignLayers(Arrays.asList(
+        artifact("com.google.guava", "guava", "20.0", "jar", true),
+        artifact("com.example", "library", "1.0-SNAPSHOT", "jar", true),
+        artifact("com.example", "parent", "1.0", "pom", false),
+        unpackaged), classesDirectory, new SystemStreamLog());
+
+    assertEquals(Collections.singleton("guava-20.0.jar"),
+        layers.get(Layer.DEPENDENCIES).keySet());
+    assertEquals(Collections.singleton("library-1.0-SNAPSHOT.jar"),
+        layers.get(Layer.SNAPSHOT_DEPENDENCIES).keySet());
+    assertEquals(Collections.singleton("application.properties"),
+        layers.get(Layer.RESOURCES).keySet());
+    assertEquals(Collections.singleton(new File("com/example/Main.class").getPath()),
+        layers.get(Layer.CLASSES).keySet());
+  }
+
+  @Test
+  public void testSameFileNameFromDifferentGroupsIsPrefixedWithGroupId() throws Exception {
+    final Map<Layer, Map<String, Path>> layers = StageMojo.assignLayers(Arrays.asList(
+        artifact("com.example", "core", "1.0", "jar", true),
+        artifact("org.example", "core", "1.0", "jar", true),
+        artifact("org.example", "api", "1.0", "jar", true)), classesDirectory,
+        new SystemStreamLog());
+
+    assertEquals(
+        new TreeSet<>(Arrays.asList("api-1.0.jar", "com.example-core-1.0.jar",
+            "org.example-core-1.0.jar")),
+        new TreeSet<>(layers.get(Layer.DEPENDENCIES).keySet()));
+  }
+
+  @Test
+  public void testSameStagedNameFails() throws Exception {
+    final Artifact core = artifact("com.example", "core", "1.0", "jar", true);
+    final Artifact relocated = artifact("com.example", "core-relocated", "1.0", "jar", true);
+    relocated.setFile(new File(basedir, "relocated/core-1.0.jar"));
+    write(relocated.getFile().toPath(), "jar");
+
+    try {
+      StageMojo.assignLayers(Arrays.asList(core, relocated), classesDirectory,
+          new SystemStreamLog());
+      fail("Expected staging to fail");
+    } catch (MojoExecutionException e) {
+      assertEquals("Dependencies " + core + " and " + relocated
+                   + " would both be staged as com.example-core-1.0.jar", e.getMessage());
+    }
+  }
+
+  private Artifact artifact(String groupId, String artifactId, String version, String type,
+                            boolean addedToClasspath) throws IOException {
+    final DefaultArtifactHandler handler = new DefaultArtifactHandler(type);
+    handler.setAddedToClasspath(addedToClasspath);
+    final Artifact artifact =
+        new DefaultArtifact(groupId, artifactId, version, "compile", type, null, handler);
+    // Like in the local repository
+    final Path file = basedir.toPath().resolve(groupId).resolve(artifactId)
+        .resolve(artifactId + "-" + version + "." + type);
+    write(file, type);
+    artifact.setFile(file.toFile());
+    return artifact;
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void delete(File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,122 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class TestStartMojo {
+
+  private static final String IMAGE_ID = "sha256:1234";
+  private static final String NETWORK = "dockerfile-com.example_app";
+
+  @Test
+  public void testConfigHashIsStable() throws Exception {
+    final Map<String, String> env = new LinkedHashMap<>();
+    env.put("A", "1");
+    env.put("B", "2");
+    final Map<String, String> reordered = new LinkedHashMap<>();
+    reordered.put("B", "2");
+    reordered.put("A", "1");
+
+    final String hash = StartMojo.configHash(
+        spec("db", env, ImmutableList.of("5432"), ImmutableList.of("postgres")),
+        IMAGE_ID, NETWORK);
+
+    assertEquals(hash, StartMojo.configHash(
+        spec("db", reordered, ImmutableList.of("5432/tcp"), ImmutableList.of("postgres")),
+        IMAGE_ID, NETWORK));
+  }
+
+  @Test
+  public void testConfigHashIgnoresReadinessConditions() throws Exception {
+    final ContainerSpec spec = spec("db", Collections.<String, String>emptyMap(),
+        ImmutableList.of("5432"), Collections.<String>emptyList());
+    final String hash = StartMojo.configHash(spec, IMAGE_ID, NETWORK);
+    set(spec, "waitForPort", "5432");
+    set(spec, "waitForLog", "ready to accept connections");
+
+    assertEquals(hash, StartMojo.configHash(spec, IMAGE_ID, NETWORK));
+  }
+
+  @Test
+  public void testConfigHashChangesWithConfiguration() throws Exception {
+    final ContainerSpec spec = spec("db", ImmutableMap.of("A", "1"),
+        ImmutableList.of("5432"), ImmutableList.of("postgres"));
+    final String hash = StartMojo.configHash(spec, IMAGE_ID, NETWORK);
+
+    assertNotEquals(hash, StartMojo.configHash(spec, "sha256:5678", NETWORK));
+    assertNotEquals(hash, StartMojo.configHash(spec, IMAGE_ID, "dockerfile-com.example_other"));
+    assertNotEquals(hash, StartMojo.configHash(spec("db", ImmutableMap.of("A", "2"),
+        ImmutableList.of("5432"), ImmutableList.of("postgres")), IMAGE_ID, NETWORK));
+    assertNotEquals(hash, StartMojo.configHash(spec("db", ImmutableMap.of("A", "1"),
+        ImmutableList.of("5433"), ImmutableList.of("postgres")), IMAGE_ID, NETWORK));
+    assertNotEquals(hash, StartMojo.configHash(spec("db", ImmutableMap.of("A", "1"),
+        ImmutableList.of("5432"), ImmutableList.of("postgres", "-v")), IMAGE_ID, NETWORK));
+    // A port is not the same as a command argument with the same text
+    assertNotEquals(
+        StartMojo.configHash(spec("db", Collections.<String, String>emptyMap(),
+            ImmutableList.of("x"), Collections.<String>emptyList()), IMAGE_ID, NETWORK),
+        StartMojo.configHash(spec("db", Collections.<String, String>emptyMap(),
+            Collections.<String>emptyList(), ImmutableList.of("x/tcp")), IMAGE_ID, NETWORK));
+  }
+
+  @Test
+  public void testReusesOnlyRunningContainersWithTheSameConfiguration() {
+    final Map<String, String> labels = ImmutableMap.of(Containers.CONFIG_LABEL, "abcd");
+
+    assertTrue(StartMojo.isReusable("running", labels, "abcd"));
+    assertFalse(StartMojo.isReusable("running", labels, "efgh"));
+    assertFalse(StartMojo.isReusable("exited", labels, "abcd"));
+    assertFalse(StartMojo.isReusable(null, labels, "abcd"));
+    assertFalse(StartMojo.isReusable("running", null, "abcd"));
+    assertFalse(StartMojo.isReusable("running",
+        Collections.<String, String>emptyMap(), "abcd"));
+  }
+
+  private static ContainerSpec spec(String name,
+                                    Map<String, String> env,
+                                    List<String> ports,
+                                    List<String> command) throws Exception {
+    final ContainerSpec spec = new ContainerSpec();
+    set(spec, "name", name);
+    set(spec, "env", env);
+    set(spec, "ports", ports);
+    set(spec, "command", command);
+    return spec;
+  }
+
+  private static void set(ContainerSpec spec, String field, Object value) throws Exception {
+    final Field declared = ContainerSpec.class.getDeclaredField(field);
+    declared.setAccessible(true);
+    declared.set(spec, value);
+  }
+}
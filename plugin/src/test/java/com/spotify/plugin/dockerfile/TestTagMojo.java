@@ -0,0 +1,174 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import com.spotify.plugin.dockerfile.AbstractDockerMojo.Metadata;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestTagMojo {
+
+  private static final String IMAGE_ID = "sha256:1234";
+
+  private final AtomicInteger jarsBuilt = new AtomicInteger();
+  private final List<String> tagged = Collections.synchronizedList(new ArrayList<String>());
+  private File basedir;
+  private TagMojo mojo;
+
+  @Before
+  public void setUp() throws Exception {
+    basedir = Files.createTempDirectory("tag").toFile();
+    mojo = new TagMojo() {
+      @Override
+      protected File buildDockerInfoJar(Log log) {
+        jarsBuilt.incrementAndGet();
+        return new File(basedir, "app-1.0-docker-info.jar");
+      }
+
+      @Override
+      void attachJar(File jarFile) {
+      }
+    };
+    Mojos.setProjectDirectories(mojo, basedir);
+    Mojos.set(mojo, "repository", "example/app");
+    Mojos.set(mojo, "tag", "1.0");
+    Mojos.set(mojo, "force", true);
+  }
+
+  @After
+  public void tearDown() {
+    delete(basedir);
+  }
+
+  @Test
+  public void testFailsWithoutImageId() throws Exception {
+    try {
+      mojo.execute(daemon(Collections.<String>emptySet(), 1));
+      fail("Expected the tag goal to fail");
+    } catch (MojoFailureException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("image ID not known"));
+    }
+    assertEquals(0, jarsBuilt.get());
+  }
+
+  @Test
+  public void testFailsWithoutImage() throws Exception {
+    writeMetadata(Metadata.IMAGE_ID, IMAGE_ID);
+
+    try {
+      mojo.execute(daemon(Collections.<String>emptySet(), 1));
+      fail("Expected the tag goal to fail");
+    } catch (MojoFailureException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("does not exist"));
+    }
+    assertEquals(Collections.<String>emptyList(), tagged);
+    assertEquals(0, jarsBuilt.get());
+  }
+
+  @Test
+  public void testAppliesAllTagsConcurrently() throws Exception {
+    writeMetadata(Metadata.IMAGE_ID, IMAGE_ID);
+    Mojos.set(mojo, "tags", Arrays.asList("latest", "stable", "1.0"));
+
+    // Each tag waits until all three are being applied
+    mojo.execute(daemon(Collections.singleton(IMAGE_ID), 3));
+
+    assertEquals(new HashSet<>(Arrays.asList(
+        "example/app:1.0", "example/app:latest", "example/app:stable")), new HashSet<>(tagged));
+    assertEquals(3, tagged.size());
+    assertEquals("1.0,latest,stable", readMetadata(Metadata.TAGS));
+    assertEquals("example/app:1.0", readMetadata(Metadata.IMAGE_NAME));
+    assertEquals(1, jarsBuilt.get());
+  }
+
+  private DockerClient daemon(final Set<String> images, int concurrentTags) {
+    final CountDownLatch tagging = new CountDownLatch(concurrentTags);
+    return (DockerClient) Proxy.newProxyInstance(DockerClient.class.getClassLoader(),
+        new Class<?>[] {DockerClient.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+              case "inspectImage":
+                if (!images.contains(args[0])) {
+                  throw new ImageNotFoundException((String) args[0]);
+                }
+                return null;
+              case "tag":
+                tagging.countDown();
+                if (!tagging.await(10, TimeUnit.SECONDS)) {
+                  throw new AssertionError("Tags are not applied concurrently");
+                }
+                tagged.add((String) args[1]);
+                return null;
+              default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+          }
+        });
+  }
+
+  private Path metadataFile(Metadata metadata) {
+    return basedir.toPath().resolve("target/docker").resolve(metadata.getFileName());
+  }
+
+  private void writeMetadata(Metadata metadata, String value) throws Exception {
+    Files.createDirectories(metadataFile(metadata).getParent());
+    MetadataFiles.write(metadataFile(metadata), value);
+  }
+
+  private String readMetadata(Metadata metadata) throws Exception {
+    return MetadataFiles.read(metadataFile(metadata));
+  }
+
+  private static void delete(File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
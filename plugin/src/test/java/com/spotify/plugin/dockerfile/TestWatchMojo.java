@@ -0,0 +1,136 @@
+/*-
+ * -\-\-
+ * Dockerfile Maven Plugin
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.plugin.dockerfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import com.spotify.docker.client.DockerClient;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestWatchMojo {
+
+  private final AtomicInteger rebuilds = new AtomicInteger();
+  private final Log log = new SystemStreamLog();
+  private volatile MojoExecutionException failure;
+  private File basedir;
+  private WatchMojo mojo;
+
+  @Before
+  public void setUp() throws Exception {
+    basedir = Files.createTempDirectory("watch").toFile();
+    write("Dockerfile", "FROM scratch\nCOPY src /src\n");
+    write(".dockerignore", "*.log\n");
+    write("src/hello.txt", "hello");
+    write("target/app-1.0.jar", "jar");
+    mojo = new WatchMojo() {
+      @Override
+      void rebuild(DockerClient dockerClient) throws MojoExecutionException {
+        rebuilds.incrementAndGet();
+        if (failure != null) {
+          throw failure;
+        }
+      }
+    };
+    Mojos.setProjectDirectories(mojo, basedir);
+  }
+
+  @After
+  public void tearDown() {
+    delete(basedir);
+  }
+
+  @Test
+  public void testSkippedBuildDoesNotWatch() throws Exception {
+    Mojos.set(mojo, "skipBuild", true);
+
+    // Returns instead of watching forever
+    mojo.execute(Sessions.closeCountingClient(new AtomicInteger()));
+
+    assertEquals(0, rebuilds.get());
+  }
+
+  @Test
+  public void testIgnoredChangesDoNotRebuild() throws Exception {
+    final String built = mojo.fingerprint(null);
+
+    write("debug.log", "ignored by .dockerignore");
+    write("target/docker/image-id", "sha256:1234");
+    write("target/image-size.json", "{\"imageId\": \"sha256:1234\"}");
+
+    assertEquals(built, mojo.rebuildIfChanged(null, log, built));
+    assertEquals(0, rebuilds.get());
+  }
+
+  @Test
+  public void testContextChangeRebuilds() throws Exception {
+    final String built = mojo.fingerprint(null);
+
+    write("src/hello.txt", "hello again");
+    final String rebuilt = mojo.rebuildIfChanged(null, log, built);
+
+    assertNotEquals(built, rebuilt);
+    assertEquals(1, rebuilds.get());
+    assertEquals(rebuilt, mojo.rebuildIfChanged(null, log, rebuilt));
+    assertEquals(1, rebuilds.get());
+  }
+
+  @Test
+  public void testFailedRebuildIsRetriedOnNextChange() throws Exception {
+    final String built = mojo.fingerprint(null);
+
+    write("src/hello.txt", "broken");
+    failure = new MojoExecutionException("Could not build image");
+    assertEquals(built, mojo.rebuildIfChanged(null, log, built));
+
+    write("src/hello.txt", "fixed");
+    failure = null;
+    assertNotEquals(built, mojo.rebuildIfChanged(null, log, built));
+    assertEquals(2, rebuilds.get());
+  }
+
+  private void write(String path, String content) throws IOException {
+    final Path file = basedir.toPath().resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void delete(File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}